@@ -0,0 +1,88 @@
+package it.unipi.hadoop;
+
+import org.apache.hadoop.conf.Configuration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of the nearest-centroid search of the mapper: a batch of points is assigned to k centroids
+ * with the CentroidIndex chosen by the kmeans.assignment setting.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AssignmentBenchmark {
+
+    /**
+     * Number of centroids.
+     */
+    @Param({"4", "32", "256"})
+    public int k;
+
+    /**
+     * Dimension of the points.
+     */
+    @Param({"2", "16", "64"})
+    public int dimension;
+
+    /**
+     * Number of points assigned by every invocation.
+     */
+    @Param({"1000", "10000"})
+    public int batch;
+
+    /**
+     * Strategy of the assignment, as in the kmeans.assignment setting.
+     */
+    @Param({"linear", "pruned"})
+    public String assignment;
+
+    private double[][] points;
+    private CentroidIndex index;
+
+    /**
+     * Generates the points and the centroids of the benchmark and creates the index.
+     */
+    @Setup
+    public void setup() {
+        Random random = new Random(BenchmarkData.SEED);
+        Point[] batchPoints = BenchmarkData.points(random, batch, dimension);
+        points = new double[batch][];
+        for (int i = 0; i < batch; i++) {
+            points[i] = batchPoints[i].getCoordinates();
+        }
+
+        Configuration conf = new Configuration(false);
+        conf.set(KMeansUtil.ASSIGNMENT_KEY, assignment);
+        index = KMeansUtil.createCentroidIndex(new CentroidSet(BenchmarkData.centroids(random, k, dimension)), conf);
+    }
+
+    /**
+     * Assigns the batch of points to their nearest centroids.
+     *
+     * @return The sum of the indexes of the nearest centroids, so that the search is not optimized away.
+     */
+    @Benchmark
+    public long assign() {
+        long sum = 0;
+        for (double[] point : points) {
+            sum += index.nearest(point);
+        }
+        return sum;
+    }
+}
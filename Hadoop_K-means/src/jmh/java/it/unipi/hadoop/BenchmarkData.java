@@ -0,0 +1,69 @@
+package it.unipi.hadoop;
+
+import org.apache.hadoop.io.Text;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Generators of the random datasets and centroids used by the benchmarks.
+ * The data is uniform in the unit hypercube and depends only on the seed, so that the results of different commits
+ * are measured on the same input.
+ */
+public class BenchmarkData {
+
+    /**
+     * Seed of the generated data.
+     */
+    public static final long SEED = 42L;
+
+    /**
+     * Generates random points.
+     *
+     * @param random    The random number generator.
+     * @param count     The number of points.
+     * @param dimension The dimension of the points.
+     * @return The points.
+     */
+    public static Point[] points(Random random, int count, int dimension) {
+        Point[] points = new Point[count];
+        for (int i = 0; i < count; i++) {
+            double[] coordinates = new double[dimension];
+            for (int j = 0; j < dimension; j++) {
+                coordinates[j] = random.nextDouble();
+            }
+            points[i] = new Point(coordinates);
+        }
+        return points;
+    }
+
+    /**
+     * Generates random centroids.
+     *
+     * @param random    The random number generator.
+     * @param k         The number of centroids.
+     * @param dimension The dimension of the centroids.
+     * @return The centroids, with IDs from 0 to k - 1.
+     */
+    public static ArrayList<Centroid> centroids(Random random, int k, int dimension) {
+        ArrayList<Centroid> centroids = new ArrayList<>(k);
+        for (Point point : points(random, k, dimension)) {
+            centroids.add(new Centroid(centroids.size(), point.getCoordinates()));
+        }
+        return centroids;
+    }
+
+    /**
+     * Converts points to the CSV records of the dataset.
+     *
+     * @param points The points.
+     * @return The records, one for each point.
+     */
+    public static Text[] records(Point[] points) {
+        Text[] records = new Text[points.length];
+        for (int i = 0; i < points.length; i++) {
+            records[i] = new Text(points[i].toString().replace(' ', ','));
+        }
+        return records;
+    }
+}
@@ -0,0 +1,304 @@
+package it.unipi.hadoop;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.mapred.RawKeyValueIterator;
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.Counters;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobID;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.StatusReporter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.TaskID;
+import org.apache.hadoop.mapreduce.TaskType;
+import org.apache.hadoop.mapreduce.counters.GenericCounter;
+import org.apache.hadoop.mapreduce.lib.map.WrappedMapper;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputCommitter;
+import org.apache.hadoop.mapreduce.lib.reduce.WrappedReducer;
+import org.apache.hadoop.mapreduce.task.MapContextImpl;
+import org.apache.hadoop.mapreduce.task.ReduceContextImpl;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.apache.hadoop.util.Progress;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * In-process contexts that run the mapper, the combiner and the reducer of the K-means job without a job runner.
+ * The map output is serialized and sorted by key in memory, like the shuffle does, and then fed to the reducers
+ * through the same ReduceContextImpl used by Hadoop, so that the values are deserialized into a reused object.
+ */
+public class InProcessTask {
+
+    /**
+     * Runs a mapper over records in memory.
+     * The side files of the mapper, i.e. the SSE of the task, are committed to a temporary directory
+     * that is deleted at the end of the run.
+     *
+     * @param mapper  The mapper.
+     * @param conf    The Hadoop configuration.
+     * @param jobId   The ID of the job.
+     * @param records The input records.
+     * @param output  The writer of the map output.
+     * @throws IOException          If an I/O error occurs.
+     * @throws InterruptedException If the execution is interrupted.
+     */
+    public static void runMapper(Mapper<Object, Writable, IntWritable, Point> mapper, Configuration conf, JobID jobId,
+                                 Writable[] records, RecordWriter<IntWritable, Point> output) throws IOException, InterruptedException {
+        TaskAttemptID taskId = new TaskAttemptID(new TaskID(jobId, TaskType.MAP, 0), 0);
+        Path outputPath = new Path(System.getProperty("java.io.tmpdir"), "kmeans-benchmark-" + taskId);
+        FileOutputCommitter committer = new FileOutputCommitter(outputPath, new TaskAttemptContextImpl(conf, taskId));
+        MapContextImpl<Object, Writable, IntWritable, Point> context = new MapContextImpl<>(conf, taskId,
+                new ArrayRecordReader(records), output, committer, new CountersReporter(), null);
+        try {
+            mapper.run(new WrappedMapper<Object, Writable, IntWritable, Point>().getMapContext(context));
+        } finally {
+            outputPath.getFileSystem(conf).delete(outputPath, true);
+        }
+    }
+
+    /**
+     * Runs a reducer, or a combiner, over the sorted content of a shuffle buffer.
+     * The side files of the reducer, i.e. the centroid updates, are committed to a temporary directory
+     * that is deleted at the end of the run.
+     *
+     * @param reducer The reducer.
+     * @param conf    The Hadoop configuration.
+     * @param jobId   The ID of the job.
+     * @param input   The shuffle buffer with the map output.
+     * @param output  The writer of the reduce output.
+     * @param <V>     The type of the output values.
+     * @throws IOException          If an I/O error occurs.
+     * @throws InterruptedException If the execution is interrupted.
+     */
+    public static <V> void runReducer(Reducer<IntWritable, Point, IntWritable, V> reducer, Configuration conf, JobID jobId,
+                                      ShuffleBuffer input, RecordWriter<IntWritable, V> output) throws IOException, InterruptedException {
+        TaskAttemptID taskId = new TaskAttemptID(new TaskID(jobId, TaskType.REDUCE, 0), 0);
+        WritableComparator comparator = WritableComparator.get(IntWritable.class);
+        Path outputPath = new Path(System.getProperty("java.io.tmpdir"), "kmeans-benchmark-" + taskId);
+        FileOutputCommitter committer = new FileOutputCommitter(outputPath, new TaskAttemptContextImpl(conf, taskId));
+        @SuppressWarnings("unchecked")
+        ReduceContextImpl<IntWritable, Point, IntWritable, V> context = new ReduceContextImpl<>(conf, taskId,
+                input.sortedIterator(), new GenericCounter(), new GenericCounter(), output, committer,
+                new CountersReporter(), comparator, IntWritable.class, Point.class);
+        try {
+            reducer.run(new WrappedReducer<IntWritable, Point, IntWritable, V>().getReducerContext(context));
+        } finally {
+            outputPath.getFileSystem(conf).delete(outputPath, true);
+        }
+    }
+
+    /**
+     * Reporter that keeps the counters of the task in memory, the status and the progress are ignored.
+     */
+    private static final class CountersReporter extends StatusReporter {
+
+        private final Counters counters = new Counters();
+
+        @Override
+        public Counter getCounter(Enum<?> name) {
+            return counters.findCounter(name);
+        }
+
+        @Override
+        public Counter getCounter(String group, String name) {
+            return counters.findCounter(group, name);
+        }
+
+        @Override
+        public void progress() {
+        }
+
+        @Override
+        public float getProgress() {
+            return 0;
+        }
+
+        @Override
+        public void setStatus(String status) {
+        }
+    }
+
+    /**
+     * Reader of records stored in an array, with their position as key.
+     */
+    private static final class ArrayRecordReader extends RecordReader<Object, Writable> {
+
+        private final Writable[] records;
+        private final LongWritable key = new LongWritable();
+        private int position = -1;
+
+        private ArrayRecordReader(Writable[] records) {
+            this.records = records;
+        }
+
+        @Override
+        public void initialize(InputSplit split, TaskAttemptContext context) {
+        }
+
+        @Override
+        public boolean nextKeyValue() {
+            position++;
+            key.set(position);
+            return position < records.length;
+        }
+
+        @Override
+        public Object getCurrentKey() {
+            return key;
+        }
+
+        @Override
+        public Writable getCurrentValue() {
+            return records[position];
+        }
+
+        @Override
+        public float getProgress() {
+            return records.length == 0 ? 1.0f : (float) position / records.length;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * In-memory shuffle: the pairs are serialized when they are written and sorted by key when they are read.
+     */
+    public static final class ShuffleBuffer extends RecordWriter<IntWritable, Point> {
+
+        private final DataOutputBuffer values = new DataOutputBuffer();
+        private int[] keys = new int[1024];
+        private int[] offsets = new int[1025];
+        private int size = 0;
+
+        /**
+         * Empties the buffer, keeping its memory.
+         */
+        public void reset() {
+            values.reset();
+            size = 0;
+        }
+
+        /**
+         * Retrieves the number of pairs in the buffer.
+         *
+         * @return The number of pairs.
+         */
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public void write(IntWritable key, Point value) throws IOException {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                offsets = Arrays.copyOf(offsets, size * 2 + 1);
+            }
+            keys[size] = key.get();
+            offsets[size] = values.getLength();
+            value.write(values);
+            offsets[size + 1] = values.getLength();
+            size++;
+        }
+
+        @Override
+        public void close(TaskAttemptContext context) {
+        }
+
+        /**
+         * Creates an iterator over the pairs sorted by key, pairs with the same key keep their order.
+         *
+         * @return The iterator of the serialized pairs.
+         */
+        private RawKeyValueIterator sortedIterator() {
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (first, second) -> Integer.compare(keys[first], keys[second]));
+
+            return new RawKeyValueIterator() {
+
+                private final DataOutputBuffer keyBytes = new DataOutputBuffer();
+                private final DataInputBuffer key = new DataInputBuffer();
+                private final DataInputBuffer value = new DataInputBuffer();
+                private final Progress progress = new Progress();
+                private int position = -1;
+
+                @Override
+                public DataInputBuffer getKey() {
+                    return key;
+                }
+
+                @Override
+                public DataInputBuffer getValue() {
+                    return value;
+                }
+
+                @Override
+                public boolean next() throws IOException {
+                    if (++position >= size) {
+                        return false;
+                    }
+                    int pair = order[position];
+                    keyBytes.reset();
+                    keyBytes.writeInt(keys[pair]);
+                    key.reset(keyBytes.getData(), keyBytes.getLength());
+                    value.reset(values.getData(), offsets[pair], offsets[pair + 1] - offsets[pair]);
+                    return true;
+                }
+
+                @Override
+                public void close() {
+                }
+
+                @Override
+                public Progress getProgress() {
+                    return progress;
+                }
+            };
+        }
+    }
+
+    /**
+     * Writer that only counts the written pairs.
+     *
+     * @param <K> The type of the keys.
+     * @param <V> The type of the values.
+     */
+    public static final class CountingRecordWriter<K, V> extends RecordWriter<K, V> {
+
+        private long count = 0;
+
+        /**
+         * Retrieves the number of written pairs.
+         *
+         * @return The number of written pairs.
+         */
+        public long getCount() {
+            return count;
+        }
+
+        @Override
+        public void write(K key, V value) {
+            count++;
+        }
+
+        @Override
+        public void close(TaskAttemptContext context) {
+        }
+    }
+}
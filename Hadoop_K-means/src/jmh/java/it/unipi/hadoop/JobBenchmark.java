@@ -0,0 +1,118 @@
+package it.unipi.hadoop;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapreduce.JobID;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * End-to-end benchmark of one iteration over a map task: the KMeansMapper reads a batch of CSV records
+ * (or binary points), its output is shuffled in memory, optionally combined by the KMeansCombiner, and reduced
+ * by the KMeansReducer, all through the in-process contexts of InProcessTask.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class JobBenchmark {
+
+    /**
+     * Counter of the trials, every trial uses a different job ID so that the centroids cached by the
+     * CentroidCache of the previous trial are not reused.
+     */
+    private static final AtomicInteger TRIALS = new AtomicInteger();
+
+    /**
+     * Number of centroids.
+     */
+    @Param({"8", "64"})
+    public int k;
+
+    /**
+     * Dimension of the points.
+     */
+    @Param({"4", "32"})
+    public int dimension;
+
+    /**
+     * Number of records read by the map task.
+     */
+    @Param({"10000", "100000"})
+    public int batch;
+
+    /**
+     * Where the points are summed per centroid before the shuffle: "in-mapper" or "combiner".
+     */
+    @Param({"in-mapper", "combiner"})
+    public String combining;
+
+    /**
+     * Format of the input records: "text" or "binary".
+     */
+    @Param({"text", "binary"})
+    public String input;
+
+    private Configuration conf;
+    private JobID jobId;
+    private Writable[] records;
+    private final InProcessTask.ShuffleBuffer mapOutput = new InProcessTask.ShuffleBuffer();
+    private final InProcessTask.ShuffleBuffer combinerOutput = new InProcessTask.ShuffleBuffer();
+
+    /**
+     * Generates the records and the centroids of the benchmark.
+     */
+    @Setup
+    public void setup() {
+        Random random = new Random(BenchmarkData.SEED);
+        Point[] points = BenchmarkData.points(random, batch, dimension);
+        records = "binary".equals(input) ? points : BenchmarkData.records(points);
+
+        conf = new Configuration(false);
+        conf.setBoolean(KMeansUtil.IN_MAPPER_COMBINING_KEY, "in-mapper".equals(combining));
+        KMeansUtil.setCentroidsToConf(KMeansUtil.CENTROIDS_KEY, BenchmarkData.centroids(random, k, dimension), conf);
+        jobId = new JobID("benchmark", TRIALS.incrementAndGet());
+    }
+
+    /**
+     * Runs the mapper, the combiner if the in-mapper combining is disabled, and the reducer.
+     *
+     * @return The number of centroids emitted by the reducer.
+     * @throws IOException          If an I/O error occurs.
+     * @throws InterruptedException If the execution is interrupted.
+     */
+    @Benchmark
+    public long iteration() throws IOException, InterruptedException {
+        mapOutput.reset();
+        InProcessTask.runMapper(new KMeansMapper(), conf, jobId, records, mapOutput);
+
+        InProcessTask.ShuffleBuffer reduceInput = mapOutput;
+        if (!conf.getBoolean(KMeansUtil.IN_MAPPER_COMBINING_KEY, KMeansUtil.DEFAULT_IN_MAPPER_COMBINING)) {
+            combinerOutput.reset();
+            InProcessTask.runReducer(new KMeansCombiner(), conf, jobId, mapOutput, combinerOutput);
+            reduceInput = combinerOutput;
+        }
+
+        InProcessTask.CountingRecordWriter<IntWritable, Text> output = new InProcessTask.CountingRecordWriter<>();
+        InProcessTask.runReducer(new KMeansReducer(), conf, jobId, reduceInput, output);
+        return output.getCount();
+    }
+}
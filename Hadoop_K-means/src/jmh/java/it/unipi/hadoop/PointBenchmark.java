@@ -0,0 +1,124 @@
+package it.unipi.hadoop;
+
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.Text;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the operations on a single Point: distance, sum, parsing and Writable serialization.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PointBenchmark {
+
+    /**
+     * Dimension of the points.
+     */
+    @Param({"2", "16", "128"})
+    public int dimension;
+
+    /**
+     * Points of the benchmark and the reused objects of the operations.
+     */
+    private Point first;
+    private Point second;
+    private Point partialSum;
+    private Text record;
+    private Point parsedPoint;
+    private DataOutputBuffer outputBuffer;
+    private DataInputBuffer inputBuffer;
+    private Point readPoint;
+
+    /**
+     * Generates the points of the benchmark.
+     */
+    @Setup
+    public void setup() {
+        Point[] points = BenchmarkData.points(new Random(BenchmarkData.SEED), 2, dimension);
+        first = points[0];
+        second = points[1];
+        partialSum = new Point();
+        partialSum.clear(dimension);
+        record = BenchmarkData.records(points)[0];
+        parsedPoint = new Point();
+        outputBuffer = new DataOutputBuffer();
+        inputBuffer = new DataInputBuffer();
+        readPoint = new Point();
+    }
+
+    /**
+     * Calculates the Euclidean distance between two points.
+     *
+     * @return The distance.
+     */
+    @Benchmark
+    public double distance() {
+        return first.getDistance(second);
+    }
+
+    /**
+     * Calculates the squared Euclidean distance between two points.
+     *
+     * @return The squared distance.
+     */
+    @Benchmark
+    public double squaredDistance() {
+        return first.getSquaredDistance(second);
+    }
+
+    /**
+     * Adds a point to a partial sum.
+     *
+     * @return The partial sum.
+     */
+    @Benchmark
+    public Point add() {
+        partialSum.add(first);
+        return partialSum;
+    }
+
+    /**
+     * Parses a CSV record into a reused point.
+     *
+     * @return The parsed point.
+     */
+    @Benchmark
+    public Point parse() {
+        parsedPoint.set(record);
+        return parsedPoint;
+    }
+
+    /**
+     * Serializes a point and deserializes it into a reused point, as in the shuffle.
+     *
+     * @return The deserialized point.
+     * @throws IOException If an I/O error occurs.
+     */
+    @Benchmark
+    public Point writeAndRead() throws IOException {
+        outputBuffer.reset();
+        first.write(outputBuffer);
+        inputBuffer.reset(outputBuffer.getData(), outputBuffer.getLength());
+        readPoint.readFields(inputBuffer);
+        return readPoint;
+    }
+}
@@ -0,0 +1,159 @@
+package it.unipi.hadoop;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapreduce.Reducer;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Base reducer class for the KMeans algorithm, independent of the representation of the partial sums.
+ * This class calculates the new centroid points based on the partial sums of the points assigned to each centroid,
+ * which the subclasses add up into a dense point.
+ * In a mini-batch iteration the new centroid is not the mean of the points, but the previous centroid moved towards
+ * it with a per-centroid learning rate m / (n + m), where m is the number of points of the mini-batch and n the number
+ * of points assigned to the centroid by the previous mini-batches.
+ * Besides the text output, every reducer writes the new centroids with their counts and shifts to a compact binary
+ * file (see CentroidUpdates), so that the driver checks the convergence without parsing the output again.
+ */
+public abstract class AbstractKMeansReducer<V extends Writable> extends Reducer<IntWritable, V, IntWritable, Text> {
+
+    /**
+     * Sum of the partial sums reused across the calls of reduce, accumulated in place.
+     */
+    private final Point nextCentroidPoint = new Point();
+
+    /**
+     * Centroids of the current iteration.
+     */
+    protected CentroidSet centroids;
+
+    /**
+     * Text reused to emit the new centroid points.
+     */
+    private final Text output = new Text();
+
+    /**
+     * Number of points assigned to every centroid by the previous mini-batches, null when the iteration is not a mini-batch one.
+     */
+    private long[] counts;
+
+    /**
+     * Stream of the updates file of the reducer, created with the first update.
+     */
+    private DataOutputStream updates;
+
+    /**
+     * Flag indicating whether the size of every cluster is published in a counter.
+     */
+    private boolean clusterSizeCounters;
+
+    /**
+     * Time of the setup of the reducer, i.e. the end of the shuffle.
+     */
+    private long setupMillis;
+
+    /**
+     * Reads the centroids during the setup phase, with their counts if the iteration is a mini-batch one.
+     * It also records the start of the reduce phase, after the shuffle.
+     *
+     * @param context The context object for accessing the configuration.
+     * @throws IOException          If an I/O error occurs.
+     * @throws InterruptedException If the execution is interrupted.
+     */
+    @Override
+    protected void setup(Context context) throws IOException, InterruptedException {
+        super.setup(context);
+        setupMillis = System.currentTimeMillis();
+        Configuration conf = context.getConfiguration();
+        clusterSizeCounters = conf.getBoolean(KMeansUtil.CLUSTER_SIZE_COUNTERS_KEY, false);
+        centroids = CentroidCache.get(context.getJobID().toString(), conf);
+        if (conf.getBoolean(KMeansUtil.MINIBATCH_ACTIVE_KEY, false)) {
+            counts = KMeansUtil.getMiniBatchCounts(conf, centroids.size());
+        }
+    }
+
+    /**
+     * Adds up the partial sums of a centroid.
+     *
+     * @param partialSums The partial sums of the points assigned to the centroid.
+     * @param sum         The point where the sum of the coordinates is stored.
+     * @return The number of points of the sum.
+     */
+    protected abstract long sum(Iterable<V> partialSums, Point sum);
+
+    /**
+     * Reduce method of the Reducer class.
+     * Calculates the new centroid points by averaging the partial sums of the assigned points.
+     *
+     * @param centroidId  The ID of the centroid.
+     * @param partialSums The partial sums of the points assigned to the centroid.
+     * @param context     The context object for accessing Hadoop services.
+     * @throws IOException          If an I/O error occurs.
+     * @throws InterruptedException If the execution is interrupted.
+     */
+    @Override
+    protected void reduce(IntWritable centroidId, Iterable<V> partialSums, Context context) throws IOException, InterruptedException {
+        long instances = sum(partialSums, nextCentroidPoint);
+
+        // Update the counters of the cluster
+        context.getCounter(KMeansCounter.REDUCED_POINTS).increment(instances);
+        if (clusterSizeCounters) {
+            context.getCounter(KMeansUtil.CLUSTER_SIZE_GROUP, centroidId.toString()).increment(instances);
+        }
+
+        int id = centroidId.get();
+        double[] previous = centroids.getCoordinates();
+        int offset = id * centroids.getDimension();
+        long nextCount = instances;
+        double[] sum = nextCentroidPoint.getCoordinates();
+        if (counts == null) {
+            // Calculate the average of the coordinates to obtain the new centroid point
+            for (int i = 0; i < sum.length; i++) {
+                sum[i] /= instances;
+            }
+        } else {
+            // Move the previous centroid towards the mean of the mini-batch: the weighted mean of the previous
+            // centroid, with the weight of all the points seen so far, and of the points of the mini-batch
+            long previousCount = counts[id];
+            nextCount += previousCount;
+            for (int i = 0; i < sum.length; i++) {
+                sum[i] = (previousCount * previous[offset + i] + sum[i]) / nextCount;
+            }
+        }
+
+        // Write the update of the centroid, with its shift from the previous position.
+        // The file is created lazily, so that a reducer without centroids leaves no empty file.
+        if (updates == null) {
+            updates = CentroidUpdates.create(context);
+        }
+        double shift = 0.0;
+        for (int i = 0; i < sum.length; i++) {
+            shift += Math.abs(sum[i] - previous[offset + i]);
+        }
+        CentroidUpdates.write(updates, id, nextCount, shift, sum);
+
+        // Emit the centroid ID and the string representation of the new centroid point
+        output.set(nextCentroidPoint.toString());
+        context.write(centroidId, output);
+    }
+
+    /**
+     * Closes the updates file and publishes the duration of the reduce phase at the end of the task.
+     *
+     * @param context The context object for accessing Hadoop services.
+     * @throws IOException          If an I/O error occurs.
+     * @throws InterruptedException If the execution is interrupted.
+     */
+    @Override
+    protected void cleanup(Context context) throws IOException, InterruptedException {
+        if (updates != null) {
+            updates.close();
+        }
+        context.getCounter(KMeansCounter.REDUCE_PHASE_MILLIS).increment(System.currentTimeMillis() - setupMillis);
+        super.cleanup(context);
+    }
+}
@@ -6,7 +6,6 @@ import org.apache.hadoop.io.WritableComparable;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
-import java.util.ArrayList;
 
 /**
  * Represents a centroid in the KMeans algorithm.
@@ -28,9 +27,9 @@ public class Centroid implements WritableComparable<Centroid> {
      * Constructor for creating a Centroid object with the given centroid ID and coordinates.
      *
      * @param centroid_id The centroid ID.
-     * @param coords      An ArrayList of Double values representing the centroid's coordinates.
+     * @param coords      An array of double values representing the centroid's coordinates.
      */
-    public Centroid(int centroid_id, ArrayList<Double> coords) {
+    public Centroid(int centroid_id, double[] coords) {
         this.centroid_id = new IntWritable(centroid_id);
         this.point = new Point(coords);
     }
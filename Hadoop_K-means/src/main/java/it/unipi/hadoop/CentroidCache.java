@@ -0,0 +1,59 @@
+package it.unipi.hadoop;
+
+import org.apache.hadoop.conf.Configuration;
+
+import java.io.IOException;
+
+/**
+ * Per-JVM cache of the centroids of the running iteration.
+ * The centroids are loaded once per job and iteration and then shared, as an immutable CentroidSet,
+ * by all the tasks and threads of the same JVM (JVM reuse, local runner, multithreaded mappers).
+ */
+public class CentroidCache {
+
+    /**
+     * Entry of the cache, it associates the centroids with the job and iteration they belong to.
+     */
+    private static final class Entry {
+
+        private final String key;
+        private final CentroidSet centroids;
+
+        private Entry(String key, CentroidSet centroids) {
+            this.key = key;
+            this.centroids = centroids;
+        }
+    }
+
+    /**
+     * Last loaded entry. Only the centroids of one iteration are kept, the previous ones are not needed anymore.
+     */
+    private static volatile Entry current;
+
+    /**
+     * Retrieves the centroids of an iteration, loading them only if they are not already cached.
+     *
+     * @param jobId The ID of the running job.
+     * @param conf  The Hadoop configuration of the job.
+     * @return The centroids of the iteration.
+     * @throws IOException If an I/O error occurs during the loading of the centroids.
+     */
+    public static CentroidSet get(String jobId, Configuration conf) throws IOException {
+        String key = jobId + "#" + conf.getInt(KMeansUtil.ITERATION_KEY, 0);
+
+        // Fast path without locking when the centroids are already cached
+        Entry entry = current;
+        if (entry != null && entry.key.equals(key)) {
+            return entry.centroids;
+        }
+
+        synchronized (CentroidCache.class) {
+            entry = current;
+            if (entry == null || !entry.key.equals(key)) {
+                entry = new Entry(key, new CentroidSet(KMeansUtil.loadCentroids(conf, true)));
+                current = entry;
+            }
+            return entry.centroids;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package it.unipi.hadoop;
+
+/**
+ * Search structure answering nearest-centroid queries over a CentroidSet.
+ * An index keeps the state of the last query, so every task (or thread) must use its own instance,
+ * while the underlying CentroidSet can be shared.
+ */
+public interface CentroidIndex {
+
+    /**
+     * Finds the centroid nearest to a point.
+     * When several centroids are at the same distance, the one with the lowest index is returned.
+     *
+     * @param point The coordinates of the point.
+     * @return The index of the nearest centroid in the CentroidSet.
+     */
+    int nearest(double[] point);
+
+    /**
+     * Retrieves the squared Euclidean distance between the point of the last query and its nearest centroid.
+     *
+     * @return The squared distance of the last query.
+     */
+    double getSquaredDistance();
+
+    /**
+     * Retrieves the number of point-centroid distances computed by all the queries of the index.
+     * The queries compute at most k distances each, the difference is the number of distances pruned.
+     *
+     * @return The number of distances computed.
+     */
+    long getDistanceComputations();
+}
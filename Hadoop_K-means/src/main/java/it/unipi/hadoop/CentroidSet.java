@@ -0,0 +1,168 @@
+package it.unipi.hadoop;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Immutable set of centroids stored in one flat array.
+ * The coordinates of the centroid with index i are stored in the positions [i * d, (i + 1) * d),
+ * so that a scan over all the centroids reads contiguous memory.
+ * Since it is never modified after the construction, it can be shared between the tasks and the threads of a JVM.
+ */
+public final class CentroidSet {
+
+    /**
+     * Number of centroids.
+     */
+    private final int size;
+
+    /**
+     * Dimension of the centroids.
+     */
+    private final int dimension;
+
+    /**
+     * IDs of the centroids, in order of index.
+     */
+    private final int[] ids;
+
+    /**
+     * Coordinates of all the centroids, in row-major order.
+     */
+    private final double[] coordinates;
+
+    /**
+     * Coordinates of all the centroids, in dimension-major order (the j-th coordinate of the centroid
+     * with index i is at position j * k + i), used by the blocked distance kernel.
+     */
+    private final double[] transposed;
+
+    /**
+     * Constructor for creating a CentroidSet from a list of centroids.
+     * The coordinates are copied, so later changes to the list do not affect the set.
+     *
+     * @param centroids The centroids of the set, all with the same dimension.
+     * @throws IllegalArgumentException If the centroids do not have the same dimension.
+     */
+    public CentroidSet(List<Centroid> centroids) throws IllegalArgumentException {
+        this.size = centroids.size();
+        this.dimension = size == 0 ? 0 : centroids.get(0).getPoint().getDimension();
+        this.ids = new int[size];
+        this.coordinates = new double[size * dimension];
+        this.transposed = new double[size * dimension];
+
+        for (int i = 0; i < size; i++) {
+            Centroid centroid = centroids.get(i);
+            double[] point = centroid.getPoint().getCoordinates();
+            if (point.length != dimension) {
+                throw new IllegalArgumentException("Centroid " + centroid.getCentroid_id() + " has dimension "
+                        + point.length + ", expected " + dimension);
+            }
+            ids[i] = centroid.getCentroid_id().get();
+            System.arraycopy(point, 0, coordinates, i * dimension, dimension);
+            for (int j = 0; j < dimension; j++) {
+                transposed[j * size + i] = point[j];
+            }
+        }
+    }
+
+    /**
+     * Calculates the Euclidean distance between a centroid of the set and a point.
+     *
+     * @param index The index of the centroid.
+     * @param point The coordinates of the point.
+     * @return The Euclidean distance between the centroid and the point.
+     */
+    public double getDistance(int index, double[] point) {
+        return Math.sqrt(getSquaredDistance(index, point));
+    }
+
+    /**
+     * Calculates the squared Euclidean distance between a centroid of the set and a point.
+     *
+     * @param index The index of the centroid.
+     * @param point The coordinates of the point.
+     * @return The squared Euclidean distance between the centroid and the point.
+     */
+    public double getSquaredDistance(int index, double[] point) {
+        return DistanceKernel.squaredDistance(coordinates, index * dimension, point, 0, dimension);
+    }
+
+    /**
+     * Calculates the squared Euclidean distance between two centroids of the set.
+     *
+     * @param first  The index of the first centroid.
+     * @param second The index of the second centroid.
+     * @return The squared Euclidean distance between the two centroids.
+     */
+    public double getSquaredDistance(int first, int second) {
+        return DistanceKernel.squaredDistance(coordinates, first * dimension, coordinates, second * dimension, dimension);
+    }
+
+    /**
+     * Creates the set of a range of the centroids, e.g. the centroids of one model of a sweep.
+     * The centroids keep their IDs.
+     *
+     * @param from The index of the first centroid of the range.
+     * @param to   The index after the last centroid of the range.
+     * @return The set of the centroids with index in [from, to).
+     */
+    public CentroidSet range(int from, int to) {
+        List<Centroid> centroids = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            centroids.add(new Centroid(ids[i], Arrays.copyOfRange(coordinates, i * dimension, (i + 1) * dimension)));
+        }
+        return new CentroidSet(centroids);
+    }
+
+    /* Getters */
+
+    /**
+     * Retrieves the number of centroids.
+     *
+     * @return The number of centroids.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Retrieves the dimension of the centroids.
+     *
+     * @return The dimension of the centroids.
+     */
+    public int getDimension() {
+        return dimension;
+    }
+
+    /**
+     * Retrieves the ID of a centroid.
+     *
+     * @param index The index of the centroid.
+     * @return The ID of the centroid.
+     */
+    public int getId(int index) {
+        return ids[index];
+    }
+
+    /**
+     * Retrieves the flat array of the coordinates of all the centroids in dimension-major order.
+     * The returned array is the internal storage of the set and must not be modified.
+     *
+     * @return The coordinates of all the centroids, in dimension-major order.
+     */
+    public double[] getTransposedCoordinates() {
+        return transposed;
+    }
+
+    /**
+     * Retrieves the flat array of the coordinates of all the centroids.
+     * The returned array is the internal storage of the set and must not be modified.
+     *
+     * @return The coordinates of all the centroids, in row-major order.
+     */
+    public double[] getCoordinates() {
+        return coordinates;
+    }
+}
@@ -0,0 +1,165 @@
+package it.unipi.hadoop;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.TaskInputOutputContext;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputCommitter;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * Compact binary side output of the reducers, with the updates of the centroids of an iteration.
+ * Every reducer writes one file next to its text output, with one record per emitted centroid: the ID, the number
+ * of points of the cluster (cumulative in the mini-batch iterations), the shift from the previous position as the sum
+ * of the absolute differences of the coordinates, and the new coordinates.
+ * The driver builds the centroids of the next iteration and the total shift from these files alone,
+ * without parsing the text output or the previous centroids again.
+ */
+public class CentroidUpdates {
+
+    /**
+     * Prefix of the names of the files, followed by the number of the reducer.
+     * It starts with an underscore, so the input formats skip the files when the directory is read as input.
+     */
+    public static final String FILE_PREFIX = "_updates-r-";
+
+    /**
+     * Centroids of the next iteration, sorted by ID.
+     */
+    private final ArrayList<Centroid> centroids;
+
+    /**
+     * Total shift of the centroids.
+     */
+    private final double shift;
+
+    /**
+     * Constructor for creating a CentroidUpdates object.
+     *
+     * @param centroids The centroids of the next iteration.
+     * @param shift     The total shift of the centroids.
+     */
+    private CentroidUpdates(ArrayList<Centroid> centroids, double shift) {
+        this.centroids = centroids;
+        this.shift = shift;
+    }
+
+    /**
+     * Creates the updates file of a reducer in its work output path, so that it is committed with the task.
+     *
+     * @param context The context of the reducer.
+     * @return The stream where the updates are written.
+     * @throws IOException          If an I/O error occurs, or if the output of the job is not written to files.
+     * @throws InterruptedException If the execution is interrupted.
+     */
+    public static DataOutputStream create(TaskInputOutputContext<?, ?, ?, ?> context) throws IOException, InterruptedException {
+        if (!(context.getOutputCommitter() instanceof FileOutputCommitter)) {
+            throw new IOException("The centroid updates need a FileOutputCommitter, found "
+                    + context.getOutputCommitter().getClass().getName());
+        }
+        Path path = new Path(FileOutputFormat.getWorkOutputPath(context),
+                FILE_PREFIX + String.format("%05d", context.getTaskAttemptID().getTaskID().getId()));
+        FileSystem fs = path.getFileSystem(context.getConfiguration());
+        return new DataOutputStream(new BufferedOutputStream(fs.create(path, false)));
+    }
+
+    /**
+     * Writes the update of a centroid.
+     *
+     * @param out         The stream of the updates file.
+     * @param id          The ID of the centroid.
+     * @param count       The number of points of the cluster.
+     * @param shift       The shift of the centroid.
+     * @param coordinates The new coordinates of the centroid.
+     * @throws IOException If an I/O error occurs.
+     */
+    public static void write(DataOutputStream out, int id, long count, double shift, double[] coordinates) throws IOException {
+        out.writeInt(id);
+        out.writeLong(count);
+        out.writeDouble(shift);
+        for (double coordinate : coordinates) {
+            out.writeDouble(coordinate);
+        }
+    }
+
+    /**
+     * Reads the updates files of an iteration and applies them to the previous centroids.
+     * The centroids without any update, because no point was assigned to them, keep their previous position.
+     * Every reducer with a non-empty text output must have written its updates file, otherwise the updates
+     * of its centroids would be lost and the iteration would look converged.
+     *
+     * @param conf              The Hadoop configuration.
+     * @param dirPath           The output path of the iteration.
+     * @param previousCentroids The centroids of the iteration, with IDs equal to their position in the list.
+     * @param counts            The counts of the centroids, updated in place, or null if they are not needed.
+     * @return The updates of the iteration.
+     * @throws IOException If an I/O error occurs during the reading, or if the updates file of a reducer is missing.
+     */
+    public static CentroidUpdates read(Configuration conf, Path dirPath, ArrayList<Centroid> previousCentroids, long[] counts) throws IOException {
+        ArrayList<Centroid> centroids = new ArrayList<>(previousCentroids);
+        int dimension = previousCentroids.isEmpty() ? 0 : previousCentroids.get(0).getPoint().getDimension();
+        double shift = 0.0;
+
+        FileSystem fs = dirPath.getFileSystem(conf);
+        for (FileStatus status : fs.listStatus(dirPath)) {
+            String name = status.getPath().getName();
+            if (name.startsWith("part-r-") && status.getLen() > 0
+                    && !fs.exists(new Path(dirPath, FILE_PREFIX + name.substring("part-r-".length())))) {
+                throw new IOException("No centroid updates for the output " + status.getPath());
+            }
+            if (!name.startsWith(FILE_PREFIX) || status.getLen() == 0) {
+                continue;
+            }
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(fs.open(status.getPath())))) {
+                while (true) {
+                    int id;
+                    try {
+                        id = in.readInt();
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    long count = in.readLong();
+                    shift += in.readDouble();
+                    double[] coordinates = new double[dimension];
+                    for (int j = 0; j < dimension; j++) {
+                        coordinates[j] = in.readDouble();
+                    }
+                    centroids.set(id, new Centroid(id, coordinates));
+                    if (counts != null) {
+                        counts[id] = count;
+                    }
+                }
+            }
+        }
+        return new CentroidUpdates(centroids, shift);
+    }
+
+    /* Getters */
+
+    /**
+     * Retrieves the centroids of the next iteration.
+     *
+     * @return The centroids, sorted by ID.
+     */
+    public ArrayList<Centroid> getCentroids() {
+        return centroids;
+    }
+
+    /**
+     * Retrieves the total shift of the centroids.
+     *
+     * @return The shift.
+     */
+    public double getShift() {
+        return shift;
+    }
+}
@@ -0,0 +1,288 @@
+package it.unipi.hadoop;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * Durable state of a run of the MapReduce iterations, written by the driver after every iteration,
+ * so that a run that is interrupted can be resumed from the last completed iteration.
+ * A checkpoint holds the number of the next iteration, the shift of the last one, the state of the mini-batch mode
+ * (the fraction of the dataset and the counts of the centroids) and the centroids, so that a run is resumed
+ * with the mini-batch settings it was started with. The checkpoints are written to a directory next to the output path, first to a temporary file
+ * that is then renamed, so that a checkpoint is either complete or absent.
+ */
+public class Checkpoint {
+
+    /**
+     * Marker at the beginning of every checkpoint file, changed with the format so that older files are ignored.
+     */
+    private static final int MAGIC = 0x4b4d4351;
+
+    /**
+     * Prefix and extension of the names of the checkpoint files, with the number of the next iteration in between.
+     */
+    private static final String FILE_PREFIX = "iteration-";
+    private static final String FILE_EXTENSION = ".ckpt";
+
+    /**
+     * Number of the next iteration to run.
+     */
+    private final int iteration;
+
+    /**
+     * Shift of the centroids in the last completed iteration.
+     */
+    private final double shift;
+
+    /**
+     * Number of the first iteration after the mini-batch ones, and maximum number of iterations of the run.
+     */
+    private final int miniBatchIterations;
+    private final int maxIterations;
+
+    /**
+     * Fraction of the dataset read by the mini-batch iterations, 1 when the mini-batch mode is not enabled.
+     */
+    private final double miniBatchFraction;
+
+    /**
+     * Number of points assigned to every centroid by the mini-batches, null when the mini-batch mode is not enabled.
+     */
+    private final long[] counts;
+
+    /**
+     * Centroids of the next iteration.
+     */
+    private final ArrayList<Centroid> centroids;
+
+    /**
+     * Constructor for creating a Checkpoint object.
+     *
+     * @param iteration           The number of the next iteration to run.
+     * @param shift               The shift of the centroids in the last completed iteration.
+     * @param miniBatchIterations The number of the first iteration after the mini-batch ones.
+     * @param maxIterations       The maximum number of iterations of the run.
+     * @param miniBatchFraction   The fraction of the dataset read by the mini-batch iterations.
+     * @param counts              The counts of the mini-batches, or null.
+     * @param centroids           The centroids of the next iteration.
+     */
+    public Checkpoint(int iteration, double shift, int miniBatchIterations, int maxIterations, double miniBatchFraction,
+                      long[] counts, ArrayList<Centroid> centroids) {
+        this.iteration = iteration;
+        this.shift = shift;
+        this.miniBatchIterations = miniBatchIterations;
+        this.maxIterations = maxIterations;
+        this.miniBatchFraction = miniBatchFraction;
+        this.counts = counts;
+        this.centroids = centroids;
+    }
+
+    /**
+     * Returns the directory of the checkpoints of a run.
+     *
+     * @param outputPath The output path of the job.
+     * @return The directory of the checkpoints.
+     */
+    public static Path getDirectory(Path outputPath) {
+        return outputPath.suffix("_checkpoints");
+    }
+
+    /**
+     * Writes the checkpoint atomically, and then deletes the checkpoints of the previous iterations.
+     *
+     * @param conf       The Hadoop configuration.
+     * @param outputPath The output path of the job.
+     * @throws IOException If an I/O error occurs during the writing.
+     */
+    public void write(Configuration conf, Path outputPath) throws IOException {
+        Path directory = getDirectory(outputPath);
+        Path path = new Path(directory, FILE_PREFIX + iteration + FILE_EXTENSION);
+        Path temporaryPath = path.suffix(".tmp");
+        FileSystem fs = directory.getFileSystem(conf);
+
+        int dimension = centroids.isEmpty() ? 0 : centroids.get(0).getPoint().getDimension();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fs.create(temporaryPath, true)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(iteration);
+            out.writeDouble(shift);
+            out.writeInt(miniBatchIterations);
+            out.writeInt(maxIterations);
+            out.writeDouble(miniBatchFraction);
+            out.writeInt(centroids.size());
+            out.writeInt(dimension);
+            out.writeBoolean(counts != null);
+            for (int i = 0; i < centroids.size(); i++) {
+                if (counts != null) {
+                    out.writeLong(counts[i]);
+                }
+                for (double coordinate : centroids.get(i).getPoint().getCoordinates()) {
+                    out.writeDouble(coordinate);
+                }
+            }
+        }
+        fs.delete(path, false);
+        if (!fs.rename(temporaryPath, path)) {
+            throw new IOException("Cannot rename the checkpoint " + temporaryPath);
+        }
+
+        // The previous checkpoints are not needed anymore
+        for (FileStatus status : fs.listStatus(directory)) {
+            if (!status.getPath().getName().equals(path.getName())) {
+                fs.delete(status.getPath(), false);
+            }
+        }
+    }
+
+    /**
+     * Reads the latest complete checkpoint of a run.
+     * Temporary and damaged files, left by a driver that died while writing them, are ignored.
+     *
+     * @param conf       The Hadoop configuration.
+     * @param outputPath The output path of the job.
+     * @return The latest checkpoint, or null if there is none.
+     * @throws IOException If an I/O error occurs during the listing of the checkpoints.
+     */
+    public static Checkpoint readLatest(Configuration conf, Path outputPath) throws IOException {
+        Path directory = getDirectory(outputPath);
+        FileSystem fs = directory.getFileSystem(conf);
+        if (!fs.exists(directory)) {
+            return null;
+        }
+
+        Checkpoint latest = null;
+        for (FileStatus status : fs.listStatus(directory)) {
+            String name = status.getPath().getName();
+            if (!name.startsWith(FILE_PREFIX) || !name.endsWith(FILE_EXTENSION)) {
+                continue;
+            }
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(fs.open(status.getPath())))) {
+                Checkpoint checkpoint = read(in);
+                if (checkpoint != null && (latest == null || checkpoint.iteration > latest.iteration)) {
+                    latest = checkpoint;
+                }
+            } catch (IOException e) {
+                System.err.println("Skipping the damaged checkpoint " + status.getPath() + ": " + e.getMessage());
+            }
+        }
+        return latest;
+    }
+
+    /**
+     * Reads a checkpoint from a stream.
+     *
+     * @param in The input stream.
+     * @return The checkpoint, or null if the stream does not contain a checkpoint.
+     * @throws IOException If an I/O error occurs during the reading.
+     */
+    private static Checkpoint read(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            return null;
+        }
+        int iteration = in.readInt();
+        double shift = in.readDouble();
+        int miniBatchIterations = in.readInt();
+        int maxIterations = in.readInt();
+        double miniBatchFraction = in.readDouble();
+        int k = in.readInt();
+        int dimension = in.readInt();
+        long[] counts = in.readBoolean() ? new long[k] : null;
+        ArrayList<Centroid> centroids = new ArrayList<>(k);
+        for (int i = 0; i < k; i++) {
+            if (counts != null) {
+                counts[i] = in.readLong();
+            }
+            double[] coordinates = new double[dimension];
+            for (int j = 0; j < dimension; j++) {
+                coordinates[j] = in.readDouble();
+            }
+            centroids.add(new Centroid(i, coordinates));
+        }
+        return new Checkpoint(iteration, shift, miniBatchIterations, maxIterations, miniBatchFraction, counts, centroids);
+    }
+
+    /**
+     * Deletes the checkpoints of a run, once it is complete.
+     *
+     * @param conf       The Hadoop configuration.
+     * @param outputPath The output path of the job.
+     * @throws IOException If an I/O error occurs during the deletion.
+     */
+    public static void delete(Configuration conf, Path outputPath) throws IOException {
+        Path directory = getDirectory(outputPath);
+        directory.getFileSystem(conf).delete(directory, true);
+    }
+
+    /* Getters */
+
+    /**
+     * Retrieves the number of the next iteration to run.
+     *
+     * @return The iteration number.
+     */
+    public int getIteration() {
+        return iteration;
+    }
+
+    /**
+     * Retrieves the shift of the centroids in the last completed iteration.
+     *
+     * @return The shift.
+     */
+    public double getShift() {
+        return shift;
+    }
+
+    /**
+     * Retrieves the number of the first iteration after the mini-batch ones.
+     *
+     * @return The number of mini-batch iterations.
+     */
+    public int getMiniBatchIterations() {
+        return miniBatchIterations;
+    }
+
+    /**
+     * Retrieves the maximum number of iterations of the run.
+     *
+     * @return The maximum number of iterations.
+     */
+    public int getMaxIterations() {
+        return maxIterations;
+    }
+
+    /**
+     * Retrieves the fraction of the dataset read by the mini-batch iterations.
+     *
+     * @return The fraction, 1 when the mini-batch mode is not enabled.
+     */
+    public double getMiniBatchFraction() {
+        return miniBatchFraction;
+    }
+
+    /**
+     * Retrieves the number of points assigned to every centroid by the mini-batches.
+     *
+     * @return The counts, or null when the mini-batch mode is not enabled.
+     */
+    public long[] getCounts() {
+        return counts;
+    }
+
+    /**
+     * Retrieves the centroids of the next iteration.
+     *
+     * @return The centroids, sorted by ID.
+     */
+    public ArrayList<Centroid> getCentroids() {
+        return centroids;
+    }
+}
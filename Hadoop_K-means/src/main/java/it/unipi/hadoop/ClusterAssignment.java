@@ -0,0 +1,92 @@
+package it.unipi.hadoop;
+
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Assignment of a point to its cluster, written by the labeling pass: the ID of the nearest centroid
+ * and the Euclidean distance of the point from it.
+ * The Writable form stores the ID as a variable-length integer followed by the distance as a double.
+ */
+public class ClusterAssignment implements Writable {
+
+    /**
+     * ID of the nearest centroid.
+     */
+    private int clusterId;
+
+    /**
+     * Euclidean distance between the point and the nearest centroid.
+     */
+    private double distance;
+
+    /* Writable implementation */
+
+    /**
+     * Writes the ClusterAssignment object to a DataOutput stream.
+     *
+     * @param dataOutput The output stream to write the data to.
+     * @throws IOException If an I/O error occurs.
+     */
+    @Override
+    public void write(DataOutput dataOutput) throws IOException {
+        WritableUtils.writeVInt(dataOutput, clusterId);
+        dataOutput.writeDouble(distance);
+    }
+
+    /**
+     * Reads the ClusterAssignment object from a DataInput stream.
+     *
+     * @param dataInput The input stream to read the data from.
+     * @throws IOException If an I/O error occurs.
+     */
+    @Override
+    public void readFields(DataInput dataInput) throws IOException {
+        clusterId = WritableUtils.readVInt(dataInput);
+        distance = dataInput.readDouble();
+    }
+
+    /**
+     * Sets the assignment.
+     *
+     * @param clusterId The ID of the nearest centroid.
+     * @param distance  The Euclidean distance between the point and the nearest centroid.
+     */
+    public void set(int clusterId, double distance) {
+        this.clusterId = clusterId;
+        this.distance = distance;
+    }
+
+    /* Getters */
+
+    /**
+     * Retrieves the ID of the nearest centroid.
+     *
+     * @return The ID of the nearest centroid.
+     */
+    public int getClusterId() {
+        return clusterId;
+    }
+
+    /**
+     * Retrieves the Euclidean distance between the point and the nearest centroid.
+     *
+     * @return The distance from the nearest centroid.
+     */
+    public double getDistance() {
+        return distance;
+    }
+
+    /**
+     * Returns the text form of the assignment.
+     *
+     * @return The ID of the cluster and the distance, separated by a tab.
+     */
+    public String toString() {
+        return clusterId + "\t" + distance;
+    }
+}
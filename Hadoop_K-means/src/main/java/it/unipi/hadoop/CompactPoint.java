@@ -0,0 +1,101 @@
+package it.unipi.hadoop;
+
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.WritableUtils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Point with the compact wire format of the shuffle, enabled by kmeans.shuffle.compact.
+ * The dimension is not written, since every point of the job has the dimension published by the driver in
+ * kmeans.dimension. A single point is written as the variable-length number of instances followed by its
+ * coordinates as float32, a partial sum keeps the coordinates as doubles, so that the precision of the sums
+ * does not degrade. A single point takes 1 + 4d bytes instead of the 8 + 8d bytes of a Point.
+ * Hadoop creates the objects of the shuffle through the configuration of the job, which provides the dimension.
+ */
+public class CompactPoint extends Point implements Configurable {
+
+    /**
+     * Hadoop configuration of the job.
+     */
+    private Configuration conf;
+
+    /**
+     * Dimension of the points of the job, -1 until the configuration is set.
+     */
+    private int dimension = -1;
+
+    /**
+     * Writes the point in the compact format.
+     *
+     * @param dataOutput The output stream to write the data to.
+     * @throws IOException If an I/O error occurs, or if the point does not have the dimension of the job.
+     */
+    @Override
+    public void write(DataOutput dataOutput) throws IOException {
+        if (coordinates.length != dimension) {
+            throw new IOException("Point of dimension " + coordinates.length + " in a job of dimension " + dimension);
+        }
+        WritableUtils.writeVInt(dataOutput, instances);
+        if (instances == 1) {
+            for (double coordinate : coordinates) {
+                dataOutput.writeFloat((float) coordinate);
+            }
+        } else {
+            for (double coordinate : coordinates) {
+                dataOutput.writeDouble(coordinate);
+            }
+        }
+    }
+
+    /**
+     * Reads the point in the compact format.
+     * The coordinates array is reused, since all the points of the job have the same dimension.
+     *
+     * @param dataInput The input stream to read the data from.
+     * @throws IOException If an I/O error occurs, or if the dimension of the job is not known.
+     */
+    @Override
+    public void readFields(DataInput dataInput) throws IOException {
+        if (dimension < 0) {
+            throw new IOException("The dimension of the points is not set in " + KMeansUtil.DIMENSION_KEY);
+        }
+        if (coordinates.length != dimension) {
+            coordinates = new double[dimension];
+        }
+        instances = WritableUtils.readVInt(dataInput);
+        if (instances == 1) {
+            for (int i = 0; i < dimension; i++) {
+                coordinates[i] = dataInput.readFloat();
+            }
+        } else {
+            for (int i = 0; i < dimension; i++) {
+                coordinates[i] = dataInput.readDouble();
+            }
+        }
+    }
+
+    /**
+     * Sets the configuration and reads the dimension of the points.
+     *
+     * @param conf The Hadoop configuration.
+     */
+    @Override
+    public void setConf(Configuration conf) {
+        this.conf = conf;
+        this.dimension = conf.getInt(KMeansUtil.DIMENSION_KEY, -1);
+    }
+
+    /**
+     * Retrieves the configuration.
+     *
+     * @return The Hadoop configuration.
+     */
+    @Override
+    public Configuration getConf() {
+        return conf;
+    }
+}
@@ -0,0 +1,198 @@
+package it.unipi.hadoop;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Utility class that parses the coordinates of a point directly from UTF-8 bytes.
+ * It avoids the String, the String[] and the boxed values created by the split and parse approach,
+ * so that a record can be parsed without allocating any object.
+ */
+public class CoordinateParser {
+
+    /**
+     * Powers of ten that are exactly representable as doubles.
+     */
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    /**
+     * Maximum number of significant digits that can be accumulated in a long without overflow.
+     */
+    private static final int MAX_MANTISSA_DIGITS = 18;
+
+    /**
+     * Largest mantissa that is exactly representable as a double (2^53).
+     */
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    /**
+     * Counts the number of fields of a record.
+     *
+     * @param bytes     The bytes of the record.
+     * @param start     The offset of the first byte of the record.
+     * @param end       The offset after the last byte of the record.
+     * @param separator The character separating the fields.
+     * @return The number of fields of the record.
+     */
+    public static int countFields(byte[] bytes, int start, int end, char separator) {
+        int fields = 1;
+        for (int i = start; i < end; i++) {
+            if (bytes[i] == separator) {
+                fields++;
+            }
+        }
+        return fields;
+    }
+
+    /**
+     * Parses the fields of a record into an array of doubles.
+     *
+     * @param bytes       The bytes of the record.
+     * @param start       The offset of the first byte of the record.
+     * @param end         The offset after the last byte of the record.
+     * @param separator   The character separating the fields.
+     * @param coordinates The array where the values are stored, it must be as long as the number of fields.
+     * @throws NumberFormatException If a field is not a number or the number of fields does not match the array.
+     */
+    public static void parse(byte[] bytes, int start, int end, char separator, double[] coordinates) throws NumberFormatException {
+        int field = 0;
+        int from = start;
+        for (int i = start; i <= end; i++) {
+            if (i == end || bytes[i] == separator) {
+                if (field == coordinates.length) {
+                    throw new NumberFormatException("Too many fields in record, expected " + coordinates.length);
+                }
+                coordinates[field++] = parseDouble(bytes, from, i);
+                from = i + 1;
+            }
+        }
+        if (field != coordinates.length) {
+            throw new NumberFormatException("Too few fields in record, expected " + coordinates.length);
+        }
+    }
+
+    /**
+     * Parses a single decimal number, with exactly the result of Double.parseDouble.
+     * The fast path only takes the numbers whose mantissa has at most 53 bits and whose power of ten is exact,
+     * so that a single rounded multiplication or division gives the correctly rounded value. The other numbers
+     * (e.g. 17 significant digits, NaN, Infinity, hexadecimal or very large exponents) fall back to Double.parseDouble.
+     *
+     * @param bytes The bytes containing the number.
+     * @param from  The offset of the first byte of the number.
+     * @param to    The offset after the last byte of the number.
+     * @return The parsed value.
+     * @throws NumberFormatException If the bytes do not represent a number.
+     */
+    public static double parseDouble(byte[] bytes, int from, int to) throws NumberFormatException {
+        // Trim the blanks around the number (e.g. the carriage return of CRLF files)
+        while (from < to && isBlank(bytes[from])) {
+            from++;
+        }
+        while (to > from && isBlank(bytes[to - 1])) {
+            to--;
+        }
+
+        int i = from;
+        boolean negative = false;
+        if (i < to && (bytes[i] == '-' || bytes[i] == '+')) {
+            negative = bytes[i] == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean anyDigit = false;
+        boolean fraction = false;
+        boolean truncated = false;
+
+        for (; i < to; i++) {
+            byte b = bytes[i];
+            if (b >= '0' && b <= '9') {
+                anyDigit = true;
+                if (digits < MAX_MANTISSA_DIGITS) {
+                    // Leading zeros are not significant digits
+                    if (mantissa != 0 || b != '0') {
+                        digits++;
+                    }
+                    mantissa = mantissa * 10 + (b - '0');
+                    if (fraction) {
+                        exponent--;
+                    }
+                } else {
+                    // The digit does not fit in the mantissa, the value cannot be rounded exactly
+                    truncated = true;
+                }
+            } else if (b == '.' && !fraction) {
+                fraction = true;
+            } else {
+                break;
+            }
+        }
+
+        if (i < to && anyDigit && (bytes[i] == 'e' || bytes[i] == 'E')) {
+            i++;
+            boolean negativeExponent = false;
+            if (i < to && (bytes[i] == '-' || bytes[i] == '+')) {
+                negativeExponent = bytes[i] == '-';
+                i++;
+            }
+            int explicitExponent = 0;
+            boolean anyExponentDigit = false;
+            for (; i < to && bytes[i] >= '0' && bytes[i] <= '9'; i++) {
+                anyExponentDigit = true;
+                if (explicitExponent < 10000) {
+                    explicitExponent = explicitExponent * 10 + (bytes[i] - '0');
+                }
+            }
+            if (!anyExponentDigit) {
+                return slowParse(bytes, from, to);
+            }
+            exponent += negativeExponent ? -explicitExponent : explicitExponent;
+        }
+
+        if (i != to || !anyDigit || truncated) {
+            return slowParse(bytes, from, to);
+        }
+
+        double value;
+        if (mantissa == 0) {
+            value = 0.0;
+        } else if (mantissa < MAX_EXACT_MANTISSA && exponent >= -22 && exponent <= 22) {
+            // Both operands are exact, so the result is correctly rounded
+            value = (double) mantissa;
+            value = exponent < 0 ? value / POWERS_OF_TEN[-exponent] : value * POWERS_OF_TEN[exponent];
+        } else if (mantissa < MAX_EXACT_MANTISSA && exponent > 22 && exponent <= 22 + 15 - digits) {
+            // The mantissa can be shifted left without losing precision
+            value = (double) mantissa * POWERS_OF_TEN[exponent - 22] * POWERS_OF_TEN[22];
+        } else {
+            return slowParse(bytes, from, to);
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parses a number through Double.parseDouble, used for the uncommon forms.
+     *
+     * @param bytes The bytes containing the number.
+     * @param from  The offset of the first byte of the number.
+     * @param to    The offset after the last byte of the number.
+     * @return The parsed value.
+     * @throws NumberFormatException If the bytes do not represent a number.
+     */
+    private static double slowParse(byte[] bytes, int from, int to) throws NumberFormatException {
+        return Double.parseDouble(new String(bytes, from, to - from, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Checks whether a byte is a blank character.
+     *
+     * @param b The byte to check.
+     * @return True if the byte is a space, a tab or a line terminator.
+     */
+    private static boolean isBlank(byte b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+    }
+}
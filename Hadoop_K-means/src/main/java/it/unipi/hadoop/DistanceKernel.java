@@ -0,0 +1,83 @@
+package it.unipi.hadoop;
+
+/**
+ * Distance kernels working on contiguous arrays of doubles.
+ * All the kernels compute squared Euclidean distances: the square root is monotonic, so it is not needed
+ * to compare distances. The coordinates of each distance are always accumulated in order of dimension,
+ * so all the kernels return exactly the same value for the same pair of vectors.
+ */
+public class DistanceKernel {
+
+    /**
+     * Number of centroids processed together by the blocked kernel.
+     * The partial distances of a block stay in the L1 cache while the dimensions are scanned.
+     */
+    public static final int BLOCK_SIZE = 256;
+
+    /**
+     * Calculates the squared Euclidean distance between two vectors stored in arrays.
+     *
+     * @param a       The array of the first vector.
+     * @param aOffset The offset of the first vector in its array.
+     * @param b       The array of the second vector.
+     * @param bOffset The offset of the second vector in its array.
+     * @param length  The dimension of the vectors.
+     * @return The squared Euclidean distance between the two vectors.
+     */
+    public static double squaredDistance(double[] a, int aOffset, double[] b, int bOffset, int length) {
+        double sum = 0;
+        for (int j = 0; j < length; j++) {
+            double diff = a[aOffset + j] - b[bOffset + j];
+            sum += diff * diff;
+        }
+        return sum;
+    }
+
+    /**
+     * Finds the nearest of k centroids stored in dimension-major order, i.e. with the j-th coordinate of the
+     * i-th centroid at position j * k + i.
+     * For each block of centroids the inner loop runs over the centroids, and updates the partial distances
+     * element-wise, without any reduction or dependency between iterations: it is the shape that the JIT
+     * compiler vectorizes with SIMD instructions.
+     * When several centroids are at the same distance, the one with the lowest index is returned.
+     *
+     * @param transposed The coordinates of the centroids in dimension-major order.
+     * @param k          The number of centroids.
+     * @param dimension  The dimension of the centroids.
+     * @param point      The coordinates of the point.
+     * @param distances  Buffer of at least min(k, BLOCK_SIZE) elements for the partial distances.
+     * @param result     Array of at least one element where the squared distance from the nearest centroid is stored.
+     * @return The index of the nearest centroid.
+     */
+    public static int nearest(double[] transposed, int k, int dimension, double[] point, double[] distances, double[] result) {
+        int nearest = -1;
+        double distanceFromCentroid = Double.MAX_VALUE;
+
+        for (int start = 0; start < k; start += BLOCK_SIZE) {
+            int length = Math.min(BLOCK_SIZE, k - start);
+
+            // Accumulate the squared distances of the block, one dimension at a time
+            for (int i = 0; i < length; i++) {
+                distances[i] = 0;
+            }
+            for (int j = 0; j < dimension; j++) {
+                double coordinate = point[j];
+                int offset = j * k + start;
+                for (int i = 0; i < length; i++) {
+                    double diff = transposed[offset + i] - coordinate;
+                    distances[i] += diff * diff;
+                }
+            }
+
+            // Keep the first centroid with the minimum distance
+            for (int i = 0; i < length; i++) {
+                if (nearest == -1 || distances[i] < distanceFromCentroid) {
+                    nearest = start + i;
+                    distanceFromCentroid = distances[i];
+                }
+            }
+        }
+        result[0] = distanceFromCentroid;
+        return nearest;
+    }
+}
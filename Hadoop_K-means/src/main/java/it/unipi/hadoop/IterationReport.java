@@ -0,0 +1,178 @@
+package it.unipi.hadoop;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.CounterGroup;
+import org.apache.hadoop.mapreduce.Counters;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.JobCounter;
+import org.apache.hadoop.mapreduce.TaskCounter;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Metrics of one iteration of the K-means job, collected from the counters of the job, and written by the driver
+ * to a local run report (kmeans.report.path), one row per iteration, as JSON lines or CSV.
+ * The report includes:
+ * <ul>
+ *     <li>the wall time of the job and the total time of the map tasks, of the shuffle and of the reduce phase;</li>
+ *     <li>the records and bytes emitted by the mappers, before and after the combiner, and received by the reducers;</li>
+ *     <li>the points, the SSE and the distance computations performed and pruned by the mappers;</li>
+ *     <li>the size of every cluster, when the cluster size counters are enabled;</li>
+ *     <li>the shift of the centroids.</li>
+ * </ul>
+ */
+public class IterationReport {
+
+    /**
+     * Metrics of the iteration, in order of report column.
+     */
+    private final LinkedHashMap<String, Object> metrics = new LinkedHashMap<>();
+
+    /**
+     * Collects the metrics of a completed iteration job.
+     * The task times are not available with the local job runner, so they are reported as zero.
+     *
+     * @param iteration  The iteration number.
+     * @param job        The completed job.
+     * @param wallMillis The wall time of the job, in milliseconds.
+     * @param k          The number of centroids.
+     * @param sse        The SSE of the iteration, read from the SSE files of the map tasks.
+     * @return The report of the iteration.
+     * @throws IOException If the counters of the job cannot be retrieved.
+     */
+    public static IterationReport fromJob(int iteration, Job job, long wallMillis, int k, double sse) throws IOException {
+        Counters counters = job.getCounters();
+        IterationReport report = new IterationReport();
+
+        report.put("iteration", iteration);
+        report.put("reducers", job.getNumReduceTasks());
+        report.put("minibatch", job.getConfiguration().getBoolean(KMeansUtil.MINIBATCH_ACTIVE_KEY, false));
+
+        // Times: the shuffle is the part of the reduce tasks before the setup of the reducer
+        long mapMillis = counters.findCounter(JobCounter.MILLIS_MAPS).getValue();
+        long reduceTaskMillis = counters.findCounter(JobCounter.MILLIS_REDUCES).getValue();
+        long reducePhaseMillis = counters.findCounter(KMeansCounter.REDUCE_PHASE_MILLIS).getValue();
+        report.put("wall_millis", wallMillis);
+        report.put("map_millis", mapMillis);
+        report.put("shuffle_millis", Math.max(0, reduceTaskMillis - reducePhaseMillis));
+        report.put("reduce_millis", reducePhaseMillis);
+
+        // Records and bytes
+        report.put("map_input_records", counters.findCounter(TaskCounter.MAP_INPUT_RECORDS).getValue());
+        report.put("map_output_records", counters.findCounter(TaskCounter.MAP_OUTPUT_RECORDS).getValue());
+        report.put("map_output_bytes", counters.findCounter(TaskCounter.MAP_OUTPUT_BYTES).getValue());
+        report.put("combine_input_records", counters.findCounter(TaskCounter.COMBINE_INPUT_RECORDS).getValue());
+        report.put("combine_output_records", counters.findCounter(TaskCounter.COMBINE_OUTPUT_RECORDS).getValue());
+        report.put("map_output_materialized_bytes", counters.findCounter(TaskCounter.MAP_OUTPUT_MATERIALIZED_BYTES).getValue());
+        report.put("reduce_input_records", counters.findCounter(TaskCounter.REDUCE_INPUT_RECORDS).getValue());
+        report.put("reduce_shuffle_bytes", counters.findCounter(TaskCounter.REDUCE_SHUFFLE_BYTES).getValue());
+
+        // Clustering metrics
+        report.put("points", counters.findCounter(KMeansCounter.POINTS).getValue());
+        report.put("sse", sse);
+        report.put("distance_computations", counters.findCounter(KMeansCounter.DISTANCE_COMPUTATIONS).getValue());
+        report.put("distance_pruned", counters.findCounter(KMeansCounter.DISTANCE_PRUNED).getValue());
+        if (job.getConfiguration().getBoolean(KMeansUtil.CLUSTER_SIZE_COUNTERS_KEY, false)) {
+            long[] clusterSizes = new long[k];
+            CounterGroup group = counters.getGroup(KMeansUtil.CLUSTER_SIZE_GROUP);
+            for (Counter counter : group) {
+                int id = Integer.parseInt(counter.getName());
+                if (id >= 0 && id < k) {
+                    clusterSizes[id] = counter.getValue();
+                }
+            }
+            report.put("cluster_sizes", clusterSizes);
+        }
+        return report;
+    }
+
+    /**
+     * Sets a metric of the iteration.
+     *
+     * @param name  The name of the metric.
+     * @param value The value of the metric: a number, a boolean or an array of longs.
+     */
+    public void put(String name, Object value) {
+        metrics.put(name, value);
+    }
+
+    /**
+     * Appends the report to the local run report file.
+     * A CSV file gets the header when it is created.
+     *
+     * @param conf The Hadoop configuration.
+     * @throws IOException If an I/O error occurs during the writing.
+     */
+    public void append(Configuration conf) throws IOException {
+        File file = new File(conf.get(KMeansUtil.REPORT_PATH_KEY, KMeansUtil.DEFAULT_REPORT_PATH));
+        boolean csv = file.getName().endsWith(".csv");
+        boolean newFile = !file.exists() || file.length() == 0;
+
+        try (PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(file, true)))) {
+            if (csv && newFile) {
+                out.println(String.join(",", metrics.keySet()));
+            }
+            out.println(csv ? toCsv() : toJson());
+        }
+    }
+
+    /**
+     * Converts the report to a JSON object.
+     *
+     * @return The JSON object, on a single line.
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder("{");
+        for (Map.Entry<String, Object> metric : metrics.entrySet()) {
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            json.append('"').append(metric.getKey()).append("\":");
+            Object value = metric.getValue();
+            if (value instanceof long[]) {
+                json.append('[');
+                long[] values = (long[]) value;
+                for (int i = 0; i < values.length; i++) {
+                    json.append(i == 0 ? "" : ",").append(values[i]);
+                }
+                json.append(']');
+            } else if (value instanceof Double && !Double.isFinite((Double) value)) {
+                // JSON has no literal for NaN and infinity
+                json.append("null");
+            } else {
+                json.append(value);
+            }
+        }
+        return json.append('}').toString();
+    }
+
+    /**
+     * Converts the report to a CSV row, with the arrays joined by semicolons.
+     *
+     * @return The CSV row.
+     */
+    public String toCsv() {
+        StringBuilder csv = new StringBuilder();
+        for (Object value : metrics.values()) {
+            if (csv.length() > 0) {
+                csv.append(',');
+            }
+            if (value instanceof long[]) {
+                long[] values = (long[]) value;
+                for (int i = 0; i < values.length; i++) {
+                    csv.append(i == 0 ? "" : ";").append(values[i]);
+                }
+            } else {
+                csv.append(value);
+            }
+        }
+        return csv.toString();
+    }
+}
@@ -1,12 +1,23 @@
 package it.unipi.hadoop;
 
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.mapreduce.Job;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
 
 /**
  * A class that implements the K-means algorithm using Hadoop MapReduce.
@@ -16,13 +27,24 @@ public class KMeans {
 	/**
 	 * Performs iterations of the K-means algorithm using the specified configuration, input path,
 	 * number of reducers, and output path.
+	 * Every iteration writes to its own directory, and the bookkeeping that the next iteration does not depend on
+	 * (the deletion of the old outputs and side files, the log and the run report) runs in a background thread,
+	 * overlapped with the following jobs. The output of the last iteration is moved to the output path at the end.
+	 * After every iteration the state of the run is saved in a checkpoint, which is deleted when the run is complete.
+	 * The final model, with the number of points of every centroid, is written to the output path for the incremental runs.
+	 * An incremental run folds the points of the input into the previous model with a single pass, in which every
+	 * centroid moves to the weighted mean of its previous position, with the weight of its previous points,
+	 * and of its new points: the same update of the mini-batch iterations.
 	 *
 	 * @param conf         The Hadoop configuration.
 	 * @param outputPath   The output path for storing the results.
 	 * @param inputPath    The input path containing the data points.
 	 * @param numReducers  The number of reducers to use in the MapReduce job.
+	 * @param checkpoint   The checkpoint of the run to resume, or null to start a new run.
+	 * @param modelCounts  The number of points of every centroid of the previous model in an incremental run, or null.
+	 * @return The final centroids.
 	 */
-	private static void KMeansIterations(Configuration conf, Path outputPath, Path inputPath, int numReducers) {
+	private static ArrayList<Centroid> KMeansIterations(Configuration conf, Path outputPath, Path inputPath, int numReducers, Checkpoint checkpoint, long[] modelCounts) {
 		// Get configuration file
 		FileSystem fs = null;
 		try {
@@ -35,70 +57,527 @@ public class KMeans {
 		boolean converged = false;
 		int iteration = 0;
 		
-		while (!converged && iteration < KMeansUtil.DEFAULT_MAX_ITERATIONS) {
-			// Delete output path if it already exists
-			try {
-				fs.delete(outputPath, true);
-			} catch (IOException e) {
-				System.err.println("Error during the deletion of the output file: " + e.getMessage());
-				System.exit(1);
+		// In mini-batch mode the first iterations read a sample of the dataset, then a few full iterations polish the result
+		boolean miniBatch = conf.getDouble(KMeansUtil.MINIBATCH_FRACTION_KEY, KMeansUtil.DEFAULT_MINIBATCH_FRACTION) < 1.0;
+		int miniBatchIterations = miniBatch ? conf.getInt(KMeansUtil.MINIBATCH_ITERATIONS_KEY, KMeansUtil.DEFAULT_MAX_ITERATIONS) : 0;
+		int polishIterations = conf.getInt(KMeansUtil.MINIBATCH_POLISH_ITERATIONS_KEY, KMeansUtil.DEFAULT_MINIBATCH_POLISH_ITERATIONS);
+		int maxIterations = miniBatch ? miniBatchIterations + polishIterations : KMeansUtil.DEFAULT_MAX_ITERATIONS;
+		
+		// The centroids are kept in memory: every iteration applies to them the updates written by the reducers
+		ArrayList<Centroid> centroids = null;
+		try {
+			centroids = KMeansUtil.loadCentroids(conf, false);
+		} catch (IOException e) {
+			System.err.println("Error during the reading of the centroids: " + e.getMessage());
+			System.exit(1);
+		}
+		int k = centroids.size();
+		long[] counts = miniBatch ? new long[k] : null;
+		
+		// An incremental run is a single weighted pass starting from the counts of the previous model
+		if (modelCounts != null) {
+			miniBatch = true;
+			miniBatchIterations = 1;
+			polishIterations = 0;
+			maxIterations = 1;
+			counts = modelCounts;
+		}
+		
+		// Continue from the state of the checkpoint, with the mini-batch settings of the interrupted run
+		if (checkpoint != null) {
+			iteration = checkpoint.getIteration();
+			miniBatchIterations = checkpoint.getMiniBatchIterations();
+			maxIterations = checkpoint.getMaxIterations();
+			miniBatch = checkpoint.getCounts() != null;
+			counts = checkpoint.getCounts();
+			conf.setDouble(KMeansUtil.MINIBATCH_FRACTION_KEY, checkpoint.getMiniBatchFraction());
+		}
+		
+		// Publish the size of every cluster in a counter, if it does not exceed the limit on the number of counters
+		conf.setBoolean(KMeansUtil.CLUSTER_SIZE_COUNTERS_KEY,
+				k <= conf.getInt(KMeansUtil.CLUSTER_SIZE_COUNTERS_MAX_KEY, KMeansUtil.DEFAULT_CLUSTER_SIZE_COUNTERS_MAX));
+		
+		// The compact format of the shuffle does not write the dimension of the points
+		conf.setInt(KMeansUtil.DIMENSION_KEY, centroids.get(0).getPoint().getDimension());
+		
+		// The settings shared by all the jobs are configured once, the iterations publish their centroids in the template
+		Configuration template = KMeansUtil.createJobTemplate(conf, inputPath, numReducers);
+		if (template == null) {
+			System.err.println("Error in Job configuration");
+			System.exit(1);
+		}
+		
+		// Delete the outputs of a previous run
+		try {
+			fs.delete(KMeansUtil.getIterationOutputPath(outputPath, 0).getParent(), true);
+		} catch (IOException e) {
+			System.err.println("Error during the deletion of the output file: " + e.getMessage());
+			System.exit(1);
+		}
+		
+		// In a sweep every model stops iterating as soon as it converges, the run ends when all of them have converged
+		int[] modelSizes = conf.getInts(KMeansUtil.SWEEP_MODELS_KEY);
+		boolean[] modelConverged = new boolean[modelSizes.length];
+		int[] modelIterations = new int[modelSizes.length];
+		double[] modelShifts = new double[modelSizes.length];
+		double[] modelSse = new double[modelSizes.length];
+		
+		ExecutorService bookkeeping = Executors.newSingleThreadExecutor();
+		Path iterationOutputPath = null;
+		ArrayList<Centroid> finalCentroids = centroids;
+		long[] finalCounts = new long[k];
+		
+		while (!converged && iteration < maxIterations) {
+			boolean sampling = iteration < miniBatchIterations;
+			if (modelSizes.length > 0) {
+				template.setStrings(KMeansUtil.SWEEP_ACTIVE_KEY, IntStream.range(0, modelSizes.length)
+						.filter(m -> !modelConverged[m]).mapToObj(Integer::toString).toArray(String[]::new));
+			}
+			template.setBoolean(KMeansUtil.MINIBATCH_ACTIVE_KEY, sampling);
+			if (sampling) {
+				KMeansUtil.setMiniBatchCounts(template, counts);
 			}
+			iterationOutputPath = KMeansUtil.getIterationOutputPath(outputPath, iteration);
 			
-			// Job submission
-			try (Job job = KMeansUtil.configureJob(conf, inputPath, outputPath, numReducers, iteration)) {
+			// Job submission, without the verbose progress
+			IterationReport report = null;
+			long startMillis = System.currentTimeMillis();
+			try (Job job = KMeansUtil.configureJob(template, iterationOutputPath, iteration)) {
 				if (job == null) {
 					System.err.println("Error in Job configuration");
 					System.exit(1);
 				}
-				if (!job.waitForCompletion(true)) {
+				if (!job.waitForCompletion(false)) {
 					System.err.println("Error during Job execution");
 					System.exit(1);
 				}
+				SseSummary sse = SseSummary.read(conf, iterationOutputPath, modelSizes.length);
+				report = IterationReport.fromJob(iteration, job, System.currentTimeMillis() - startMillis, k, sse.getSse());
+				for (int m = 0; m < modelSizes.length; m++) {
+					if (!modelConverged[m]) {
+						modelSse[m] = sse.getGroupSse()[m];
+					}
+					report.put("sse_model_" + m, modelSse[m]);
+				}
 				
 			} catch (IOException | InterruptedException | ClassNotFoundException e) {
 				e.printStackTrace();
 			}
 			
-			// Read the current and previous centroids
-			ArrayList<Centroid> currentCentroids = null;
+			// Apply the updates of the reducers to the centroids, with the total shift
+			CentroidUpdates updates = null;
+			long batchSize = 0;
+			long[] clusterSizes = new long[k];
 			try {
-				if (numReducers > 1) {
-					currentCentroids = KMeansUtil.readCentroidFromMultipleFiles(conf, outputPath);
+				if (sampling) {
+					long previousPoints = Arrays.stream(counts).sum();
+					updates = CentroidUpdates.read(conf, iterationOutputPath, centroids, counts);
+					batchSize = Arrays.stream(counts).sum() - previousPoints;
+					clusterSizes = counts;
 				} else {
-					String currentCentroidFile = outputPath + "/part-r-00000";
-					currentCentroids = KMeansUtil.readCentroids(currentCentroidFile, conf, false);
+					updates = CentroidUpdates.read(conf, iterationOutputPath, centroids, clusterSizes);
 				}
 			} catch (IOException e) {
-				System.err.println("Error during the reading of the current centroids: " + e.getMessage());
+				System.err.println("Error during the reading of the centroid updates: " + e.getMessage());
 				System.exit(1);
 			}
-			
-			// Calculate the shift
-			double shift = KMeansUtil.calculateCentroidShift(currentCentroids, conf);
+			ArrayList<Centroid> currentCentroids = updates.getCentroids();
+			double shift = updates.getShift();
+			finalCentroids = currentCentroids;
+			finalCounts = clusterSizes;
 			
 			// Check if converged
 			converged = (shift < KMeansUtil.DEFAULT_THRESHOLD);
+			if (modelSizes.length > 0) {
+				double[] shifts = KMeansUtil.calculateModelShifts(currentCentroids, centroids, modelSizes);
+				converged = true;
+				for (int m = 0; m < modelSizes.length; m++) {
+					if (!modelConverged[m]) {
+						modelShifts[m] = shifts[m];
+						modelIterations[m] = iteration + 1;
+						modelConverged[m] = shifts[m] < KMeansUtil.DEFAULT_THRESHOLD;
+					}
+					converged &= modelConverged[m];
+				}
+			}
+			if (sampling) {
+				// Once the mini-batches are stable (and not just empty), go on with the full polishing iterations
+				boolean stable = batchSize > 0 && shift < conf.getDouble(KMeansUtil.MINIBATCH_THRESHOLD_KEY, KMeansUtil.DEFAULT_MINIBATCH_THRESHOLD);
+				if (stable || iteration + 1 == miniBatchIterations) {
+					miniBatchIterations = iteration + 1;
+					maxIterations = miniBatchIterations + polishIterations;
+				}
+				converged = false;
+			}
 			
-			// Log the status
-			KMeansUtil.logIterationInfo(iteration, shift, numReducers);
-			if (!converged) {
-				KMeansUtil.setCentroidsToConf("centroids", currentCentroids, conf);
+			if (!converged && iteration + 1 < maxIterations) {
+				try {
+					KMeansUtil.setCentroids(template, currentCentroids, KMeansUtil.getCentroidsSideFile(outputPath, iteration + 1));
+					centroids = currentCentroids;
+				} catch (IOException e) {
+					System.err.println("Error during the publishing of the centroids: " + e.getMessage());
+					System.exit(1);
+				}
 			}
 			
+			// Save the state of the run (a sweep cannot be resumed), log the status and delete the side file
+			// and the output of the iteration, while the next job runs
+			final Checkpoint nextCheckpoint = (!converged && iteration + 1 < maxIterations && modelSizes.length == 0)
+					? new Checkpoint(iteration + 1, shift, miniBatchIterations, maxIterations,
+							conf.getDouble(KMeansUtil.MINIBATCH_FRACTION_KEY, KMeansUtil.DEFAULT_MINIBATCH_FRACTION),
+							miniBatch ? counts.clone() : null, currentCentroids)
+					: null;
+			final int currentIteration = iteration;
+			final IterationReport currentReport = report;
+			final Path previousOutputPath = (iteration > 0) ? KMeansUtil.getIterationOutputPath(outputPath, iteration - 1) : null;
+			final FileSystem bookkeepingFs = fs;
+			bookkeeping.execute(() -> {
+				if (nextCheckpoint != null) {
+					try {
+						nextCheckpoint.write(conf, outputPath);
+					} catch (IOException e) {
+						System.err.println("Error during the write of the checkpoint: " + e.getMessage());
+					}
+				}
+				KMeansUtil.logIterationInfo(currentIteration, shift, numReducers);
+				if (currentReport != null) {
+					currentReport.put("shift", shift);
+					try {
+						currentReport.append(conf);
+					} catch (IOException e) {
+						System.err.println("Error during the write on the run report: " + e.getMessage());
+					}
+				}
+				try {
+					bookkeepingFs.delete(KMeansUtil.getCentroidsSideFile(outputPath, currentIteration), false);
+					if (previousOutputPath != null) {
+						bookkeepingFs.delete(previousOutputPath, true);
+					}
+				} catch (IOException e) {
+					System.err.println("Error during the deletion of the output of an iteration: " + e.getMessage());
+				}
+			});
+			
 			iteration++;
 		}
+		
+		// Wait for the bookkeeping of the last iterations
+		bookkeeping.shutdown();
+		try {
+			bookkeeping.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		
+		// Move the output of the last iteration to the output path, or write the models of the sweep
+		try {
+			fs.delete(outputPath, true);
+			if (modelSizes.length > 0) {
+				writeSweepModels(conf, outputPath, finalCentroids, modelSizes, modelIterations, modelShifts, modelSse);
+			} else if (iterationOutputPath != null && !fs.rename(iterationOutputPath, outputPath)) {
+				System.err.println("Error during the move of the output of the last iteration");
+			} else {
+				new KMeansModel(finalCentroids, finalCounts).write(conf, outputPath);
+			}
+		} catch (IOException e) {
+			System.err.println("Error during the move of the output of the last iteration: " + e.getMessage());
+		}
+		
+		// Delete the iteration directories, the centroids side files and the checkpoints of the complete run
+		try {
+			fs.delete(KMeansUtil.getIterationOutputPath(outputPath, 0).getParent(), true);
+			fs.delete(KMeansUtil.getCentroidsSideFile(outputPath, 0).getParent(), true);
+			Checkpoint.delete(conf, outputPath);
+		} catch (IOException e) {
+			System.err.println("Error during the deletion of the centroids side files: " + e.getMessage());
+		}
+		return finalCentroids;
+	}
+	
+	
+	/**
+	 * Reads the initial centroids of the models of a sweep, and numbers them one model after the other.
+	 * The number of centroids of every model is published in the configuration.
+	 *
+	 * @param conf          The Hadoop configuration.
+	 * @param centroidPaths The comma-separated paths of the initial centroids of the models, in CSV format.
+	 * @return The initial centroids of all the models.
+	 * @throws IOException              If an I/O error occurs during the reading of the centroids.
+	 * @throws IllegalArgumentException If the models do not have the same dimension.
+	 */
+	private static ArrayList<Centroid> readSweepModels(Configuration conf, String centroidPaths) throws IOException, IllegalArgumentException {
+		ArrayList<Centroid> centroids = new ArrayList<>();
+		String[] paths = centroidPaths.split(",");
+		String[] modelSizes = new String[paths.length];
+		for (int m = 0; m < paths.length; m++) {
+			ArrayList<Centroid> model = KMeansUtil.readCentroids(paths[m], conf, true);
+			for (Centroid centroid : model) {
+				if (!centroids.isEmpty() && centroid.getPoint().getDimension() != centroids.get(0).getPoint().getDimension()) {
+					throw new IllegalArgumentException("The model " + paths[m] + " does not have the dimension of the first one");
+				}
+				centroids.add(new Centroid(centroids.size(), centroid.getPoint().getCoordinates()));
+			}
+			modelSizes[m] = Integer.toString(model.size());
+		}
+		conf.setStrings(KMeansUtil.SWEEP_MODELS_KEY, modelSizes);
+		return centroids;
+	}
+	
+	
+	/**
+	 * Writes the final centroids of every model of a sweep to its own directory of the output path,
+	 * model-m for the m-th model, in the same format of the MapReduce job, and a summary of the models
+	 * in _models.txt, with the number of centroids, the iterations, the last shift and the SSE of the last iteration.
+	 * The summary is also printed, to choose among the models.
+	 *
+	 * @param conf            The Hadoop configuration.
+	 * @param outputPath      The output path for storing the results.
+	 * @param centroids       The final centroids of all the models.
+	 * @param modelSizes      The number of centroids of every model.
+	 * @param modelIterations The number of iterations of every model.
+	 * @param modelShifts     The shift of the last iteration of every model.
+	 * @param modelSse        The SSE of the last iteration of every model.
+	 * @throws IOException If an I/O error occurs during the writing of the models.
+	 */
+	private static void writeSweepModels(Configuration conf, Path outputPath, ArrayList<Centroid> centroids, int[] modelSizes,
+										 int[] modelIterations, double[] modelShifts, double[] modelSse) throws IOException {
+		StringBuilder summary = new StringBuilder("model\tk\titerations\tshift\tsse\n");
+		for (int m = 0, offset = 0; m < modelSizes.length; offset += modelSizes[m], m++) {
+			// The centroids get back the IDs they had in their model
+			ArrayList<Centroid> model = new ArrayList<>(modelSizes[m]);
+			for (int i = 0; i < modelSizes[m]; i++) {
+				model.add(new Centroid(i, centroids.get(offset + i).getPoint().getCoordinates()));
+			}
+			KMeansUtil.writeCentroids(conf, model, new Path(outputPath, "model-" + m + "/part-r-00000"));
+			summary.append(m).append('\t').append(modelSizes[m]).append('\t').append(modelIterations[m])
+					.append('\t').append(modelShifts[m]).append('\t').append(modelSse[m]).append('\n');
+			System.out.println("Model " + m + ": k = " + modelSizes[m] + ", iterations = " + modelIterations[m] + ", SSE = " + modelSse[m]);
+		}
+		try (FSDataOutputStream out = outputPath.getFileSystem(conf).create(new Path(outputPath, "_models.txt"), true)) {
+			out.write(summary.toString().getBytes(StandardCharsets.UTF_8));
+		}
+	}
+	
+	
+	/**
+	 * Converts the CSV dataset into a SequenceFile of points with a map-only job,
+	 * so that the iterations read binary points instead of parsing the text again every time.
+	 *
+	 * @param conf       The Hadoop configuration, it is updated to read the binary input.
+	 * @param inputPath  The path of the CSV dataset.
+	 * @param outputPath The output path of the K-means job.
+	 * @return The path of the binary dataset.
+	 */
+	private static Path convertInput(Configuration conf, Path inputPath, Path outputPath) {
+		Path binaryInputPath = KMeansUtil.getBinaryInputPath(outputPath);
+		try {
+			FileSystem fs = binaryInputPath.getFileSystem(conf);
+			fs.delete(binaryInputPath, true);
+		} catch (IOException e) {
+			System.err.println("Error during the deletion of the binary input: " + e.getMessage());
+			System.exit(1);
+		}
+		
+		try (Job job = KMeansUtil.configureConversionJob(conf, inputPath, binaryInputPath)) {
+			if (job == null) {
+				System.err.println("Error in Job configuration");
+				System.exit(1);
+			}
+			if (!job.waitForCompletion(true)) {
+				System.err.println("Error during the conversion of the input");
+				System.exit(1);
+			}
+		} catch (IOException | InterruptedException | ClassNotFoundException e) {
+			System.err.println("Error during the conversion of the input: " + e.getMessage());
+			System.exit(1);
+		}
+		
+		conf.setBoolean(KMeansUtil.BINARY_INPUT_KEY, true);
+		return binaryInputPath;
+	}
+	
+	
+	/**
+	 * Computes the initial centroids with the k-means|| initialization, and writes them to the centroids path
+	 * in the CSV format of the initial centroids, so that the same seeds can be reused by later runs.
+	 *
+	 * @param conf         The Hadoop configuration.
+	 * @param inputPath    The input path containing the data points.
+	 * @param outputPath   The output path for storing the results, the initialization jobs work next to it.
+	 * @param centroidPath The path where the initial centroids are written.
+	 * @param k            The number of centroids.
+	 * @param engine       The in-memory engine over the dataset, or null to run the initialization as MapReduce jobs.
+	 * @return The initial centroids.
+	 */
+	private static ArrayList<Centroid> initializeCentroids(Configuration conf, Path inputPath, Path outputPath, String centroidPath, int k, KMeansLocal engine) {
+		ArrayList<Centroid> centroids = null;
+		try {
+			if (engine != null) {
+				centroids = engine.initialize(conf, k);
+			} else {
+				centroids = KMeansParallelInit.run(conf, inputPath, outputPath, k);
+			}
+			KMeansUtil.writeCentroids(conf, centroids, new Path(centroidPath), true);
+		} catch (IOException | IllegalArgumentException e) {
+			System.err.println("Error during the initialization of the centroids: " + e.getMessage());
+			System.exit(1);
+		}
+		return centroids;
+	}
+	
+	
+	/**
+	 * Runs the K-means algorithm in memory on the local node with the KMeansLocal engine,
+	 * and writes the final centroids to the output path in the same format of the MapReduce job.
+	 *
+	 * @param conf       The Hadoop configuration.
+	 * @param outputPath The output path for storing the results.
+	 * @param engine     The in-memory engine over the dataset.
+	 * @param centroids  The initial centroids.
+	 * @return The final centroids.
+	 */
+	private static ArrayList<Centroid> KMeansLocalIterations(Configuration conf, Path outputPath, KMeansLocal engine, ArrayList<Centroid> centroids) {
+		ArrayList<Centroid> finalCentroids = null;
+		try {
+			finalCentroids = engine.run(conf, centroids);
+			
+			FileSystem fs = outputPath.getFileSystem(conf);
+			fs.delete(outputPath, true);
+			KMeansUtil.writeCentroids(conf, finalCentroids, new Path(outputPath, "part-r-00000"));
+		} catch (IOException e) {
+			System.err.println("Error during the local execution: " + e.getMessage());
+			System.exit(1);
+		}
+		return finalCentroids;
+	}
+	
+	
+	/**
+	 * Labels every point of the dataset with its nearest final centroid in a map-only pass, and prints the SSE.
+	 * The labels are written next to the output path, see KMeansUtil.getLabelsPath. The SSE of every cluster
+	 * is written to _cluster_sse.txt in the same directory, one line with the ID and the SSE for each centroid.
+	 * The labels are keyed by the offset of the point in its input file, listed in the index of the labels.
+	 *
+	 * @param conf       The Hadoop configuration.
+	 * @param inputPath  The path of the text dataset.
+	 * @param outputPath The output path for storing the results.
+	 * @param centroids  The final centroids.
+	 */
+	private static void labelPoints(Configuration conf, Path inputPath, Path outputPath, ArrayList<Centroid> centroids) {
+		Path labelsPath = KMeansUtil.getLabelsPath(outputPath);
+		Path sideFile = KMeansUtil.getCentroidsSideFile(outputPath, 0);
+		Configuration labelConf = new Configuration(conf);
+		try {
+			FileSystem fs = labelsPath.getFileSystem(conf);
+			fs.delete(labelsPath, true);
+			KMeansUtil.setCentroids(labelConf, centroids, sideFile);
+			
+			try (Job job = KMeansUtil.configureLabelJob(labelConf, inputPath, labelsPath)) {
+				if (job == null) {
+					System.err.println("Error in Job configuration");
+					System.exit(1);
+				}
+				if (!job.waitForCompletion(true)) {
+					System.err.println("Error during the labeling of the points");
+					System.exit(1);
+				}
+				
+				SseSummary sse = SseSummary.read(labelConf, labelsPath, centroids.size());
+				System.out.println("Labeled points: " + job.getCounters().findCounter(KMeansCounter.POINTS).getValue()
+						+ ", SSE: " + sse.getSse());
+				StringBuilder clusterSse = new StringBuilder();
+				for (int i = 0; i < centroids.size(); i++) {
+					clusterSse.append(centroids.get(i).getCentroid_id()).append('\t').append(sse.getGroupSse()[i]).append('\n');
+				}
+				try (FSDataOutputStream out = fs.create(new Path(labelsPath, "_cluster_sse.txt"), true)) {
+					out.write(clusterSse.toString().getBytes(StandardCharsets.UTF_8));
+				}
+				writeLabelIndex(fs, labelsPath);
+			}
+			fs.delete(sideFile.getParent(), true);
+		} catch (IOException | InterruptedException | ClassNotFoundException e) {
+			System.err.println("Error during the labeling of the points: " + e.getMessage());
+			System.exit(1);
+		}
+	}
+	
+	
+	/**
+	 * Merges the side files with the input file of every labeling task into the index of the labels,
+	 * one line with the name of the output file of the task and the path of its input file, separated by a tab.
+	 *
+	 * @param fs         The file system of the labels.
+	 * @param labelsPath The path of the labels.
+	 * @throws IOException If an I/O error occurs during the reading or the writing of the files.
+	 */
+	private static void writeLabelIndex(FileSystem fs, Path labelsPath) throws IOException {
+		StringBuilder index = new StringBuilder();
+		FileStatus[] statuses = fs.listStatus(labelsPath, path -> path.getName().startsWith(KMeansLabelMapper.INPUT_FILE_PREFIX));
+		Arrays.sort(statuses);
+		for (FileStatus status : statuses) {
+			String task = status.getPath().getName().substring(KMeansLabelMapper.INPUT_FILE_PREFIX.length());
+			try (FSDataInputStream in = fs.open(status.getPath())) {
+				byte[] inputPath = new byte[(int) status.getLen()];
+				in.readFully(inputPath);
+				index.append("part-m-").append(task).append('\t').append(new String(inputPath, StandardCharsets.UTF_8)).append('\n');
+			}
+		}
+		try (FSDataOutputStream out = fs.create(new Path(labelsPath, KMeansLabelMapper.INDEX_FILE), true)) {
+			out.write(index.toString().getBytes(StandardCharsets.UTF_8));
+		}
+		for (FileStatus status : statuses) {
+			fs.delete(status.getPath(), false);
+		}
 	}
 	
 	
 	/**
 	 * The main entry point for the K-means program.
 	 *
-	 * @param args The command-line arguments. Expects `inputPath` `outputPath` `centroidPath` [`numReducers`].
+	 * @param args The command-line arguments. Expects [`--local`] [`--binary-cache`] [`--init=k`] [`--minibatch=fraction`] [`--seed=n`]
+	 *             [`--resume`] [`--sparse`] [`--sweep`] [`--labels`]
+	 *             [`--incremental` [`--decay=factor`]] `inputPath` `outputPath` `centroidPath` [`numReducers`].
+	 *             With `numReducers` set to `auto` the number of reducers is chosen from the number of centroids and the size of the input.
+	 *             With `--local` the iterations run in memory on the local node instead of as MapReduce jobs.
+	 *             With `--binary-cache` the dataset is converted once into binary points, which are read by all the iterations.
+	 *             With `--init=k` the k initial centroids are computed from the dataset with k-means|| and written to `centroidPath`,
+	 *             instead of being read from it.
+	 *             With `--minibatch=fraction` the MapReduce iterations read only that fraction of the dataset,
+	 *             until the centroids are stable, and then polish the result with a few full iterations.
+	 *             `--seed=n` makes the initialization and the mini-batches repeatable.
+	 *             With `--resume` the MapReduce iterations continue from the last checkpoint of an interrupted run
+	 *             with the same output path, if there is one.
+	 *             With `--sparse` the dataset is made of sparse points, one per line as index:value pairs, clustered
+	 *             without expanding them to their full dimension; the initial centroids are read from `centroidPath` as usual.
+	 *             With `--sweep` `centroidPath` is a comma-separated list of initial centroids, e.g. with different k or seeds,
+	 *             and all the models are run together, in the same scans of the dataset; the final centroids of every model
+	 *             are written to its own directory of `outputPath`, with a summary of the SSE of the models.
+	 *             With `--labels` a final map-only pass writes the cluster of every point and its distance from the centroid
+	 *             next to `outputPath`, and computes the SSE of the model.
+	 *             With `--incremental` `centroidPath` is the output path of a previous run, and the points of `inputPath`,
+	 *             e.g. only the new ones, are folded into its model in a single pass; `--decay=factor` scales the
+	 *             number of points of the previous model, so that the old points weigh less than the new ones.
 	 */
 	public static void main(String[] args) {
+		// Separate the options (--name or --name=value) from the positional arguments
+		HashMap<String, String> options = new HashMap<>();
+		ArrayList<String> arguments = new ArrayList<>();
+		for (String arg : args) {
+			if (arg.startsWith("--")) {
+				int equals = arg.indexOf('=');
+				if (equals == -1) {
+					options.put(arg.substring(2), "");
+				} else {
+					options.put(arg.substring(2, equals), arg.substring(equals + 1));
+				}
+			} else {
+				arguments.add(arg);
+			}
+		}
+		
 		// Check if the number of arguments is valid
-		if (args.length < 3 || args.length > 4) {
-			System.err.println("Usage: KMeansMain <inputPath> <outputPath> <centroidPath> [<numReducers>]");
+		if (arguments.size() < 3 || arguments.size() > 4) {
+			System.err.println("Usage: KMeansMain [--local] [--binary-cache] [--init=<k>] [--minibatch=<fraction>] [--seed=<n>] [--resume] [--sparse] [--sweep] [--labels] [--incremental [--decay=<factor>]] <inputPath> <outputPath> <centroidPath>[,<centroidPath>...] [<numReducers>|auto]");
 			System.exit(1);
 		}
 		
@@ -106,29 +585,159 @@ public class KMeans {
 		Path outputPath = null;
 		String centroidPath = null;
 		int numReducers = 1;
+		int initCentroids = 0;
+		
+		Configuration conf = new Configuration();
 		
 		// Parse the arguments
 		try {
-			inputPath = new Path(args[0]);
-			outputPath = new Path(args[1]);
-			centroidPath = args[2];
-			numReducers = (args.length == 4) ? Integer.parseInt(args[3]) : KMeansUtil.DEFAULT_NUM_REDUCERS;
+			inputPath = new Path(arguments.get(0));
+			outputPath = new Path(arguments.get(1));
+			centroidPath = arguments.get(2);
+			if (arguments.size() < 4) {
+				numReducers = KMeansUtil.DEFAULT_NUM_REDUCERS;
+			} else if ("auto".equals(arguments.get(3))) {
+				numReducers = 0;
+			} else {
+				numReducers = Integer.parseInt(arguments.get(3));
+			}
+			long seed = options.containsKey("seed") ? Long.parseLong(options.get("seed")) : new Random().nextLong();
+			conf.setLong(KMeansUtil.INIT_SEED_KEY, seed);
+			conf.setLong(KMeansUtil.MINIBATCH_SEED_KEY, seed);
+			if (options.containsKey("init")) {
+				initCentroids = Integer.parseInt(options.get("init"));
+			}
+			if (options.containsKey("sparse")) {
+				if (options.containsKey("local") || initCentroids > 0) {
+					throw new IllegalArgumentException("--sparse cannot be used with --local or --init");
+				}
+				conf.setBoolean(KMeansUtil.SPARSE_INPUT_KEY, true);
+			}
+			if (options.containsKey("sweep") && (options.containsKey("local") || initCentroids > 0 || options.containsKey("sparse")
+					|| options.containsKey("minibatch") || options.containsKey("resume") || options.containsKey("labels"))) {
+				throw new IllegalArgumentException("--sweep cannot be used with --local, --init, --sparse, --minibatch, --resume or --labels");
+			}
+			if (options.containsKey("minibatch")) {
+				conf.setDouble(KMeansUtil.MINIBATCH_FRACTION_KEY, Double.parseDouble(options.get("minibatch")));
+			}
+			if (options.containsKey("incremental") && (options.containsKey("local") || initCentroids > 0 || options.containsKey("sweep")
+					|| options.containsKey("minibatch") || options.containsKey("resume"))) {
+				throw new IllegalArgumentException("--incremental cannot be used with --local, --init, --sweep, --minibatch or --resume");
+			}
+			if (options.containsKey("decay")) {
+				double decay = Double.parseDouble(options.get("decay"));
+				if (!(decay > 0.0 && decay <= 1.0)) {
+					throw new IllegalArgumentException("The decay must be in (0, 1]");
+				}
+				conf.setDouble(KMeansUtil.INCREMENTAL_DECAY_KEY, decay);
+			}
 		} catch (IllegalArgumentException e) {
 			System.err.println("Error during the parsing of the arguments: " + e.getMessage());
 			System.exit(1);
 		}
 		
-		Configuration conf = new Configuration();
+		// Load the dataset in memory to run on the local node
+		KMeansLocal engine = null;
+		if (options.containsKey("local")) {
+			try {
+				engine = KMeansLocal.load(conf, inputPath);
+			} catch (IOException e) {
+				System.err.println("Error during the loading of the dataset: " + e.getMessage());
+				System.exit(1);
+			}
+		}
+		
+		// Convert the input into binary points, read by the initialization and by all the iterations
+		Path iterationsInputPath = inputPath;
+		if (engine == null && options.containsKey("binary-cache")) {
+			iterationsInputPath = convertInput(conf, inputPath, outputPath);
+		}
+		
+		// Read the last checkpoint of the run to resume
+		Checkpoint checkpoint = null;
+		if (engine == null && options.containsKey("resume")) {
+			try {
+				checkpoint = Checkpoint.readLatest(conf, outputPath);
+			} catch (IOException e) {
+				System.err.println("Error during the reading of the checkpoint: " + e.getMessage());
+				System.exit(1);
+			}
+			if (checkpoint == null) {
+				System.err.println("No checkpoint found for " + outputPath + ", starting a new run");
+			}
+		}
+		
+		// Compute the initial centroids from the dataset, or read them
+		ArrayList<Centroid> centroids = null;
+		long[] modelCounts = null;
+		int firstIteration = 0;
+		if (options.containsKey("incremental")) {
+			try {
+				KMeansModel model = KMeansModel.read(conf, new Path(centroidPath));
+				model.decay(conf.getDouble(KMeansUtil.INCREMENTAL_DECAY_KEY, KMeansUtil.DEFAULT_INCREMENTAL_DECAY));
+				centroids = model.getCentroids();
+				modelCounts = model.getCounts();
+			} catch (IOException e) {
+				System.err.println("Error during the reading of the previous model: " + e.getMessage());
+				System.exit(1);
+			}
+		} else if (checkpoint != null) {
+			centroids = checkpoint.getCentroids();
+			firstIteration = checkpoint.getIteration();
+		} else if (initCentroids > 0) {
+			centroids = initializeCentroids(conf, iterationsInputPath, outputPath, centroidPath, initCentroids, engine);
+		} else {
+			try {
+				centroids = options.containsKey("sweep") ? readSweepModels(conf, centroidPath) : KMeansUtil.readCentroids(centroidPath, conf, true);
+			} catch (IOException | IllegalArgumentException e) {
+				System.err.println("Error during the reading of the centroids: " + e.getMessage());
+				System.exit(1);
+			}
+		}
+		
+		// Run KMeans iterations in memory on the local node
+		if (engine != null) {
+			ArrayList<Centroid> finalCentroids = KMeansLocalIterations(conf, outputPath, engine, centroids);
+			if (options.containsKey("labels")) {
+				labelPoints(conf, inputPath, outputPath, finalCentroids);
+			}
+			return;
+		}
 		
 		// Set initial centroids in the configuration
 		try {
-			KMeansUtil.setCentroidsToConf("centroids", KMeansUtil.readCentroids(centroidPath, conf, true), conf);
+			KMeansUtil.setCentroids(conf, centroids, KMeansUtil.getCentroidsSideFile(outputPath, firstIteration));
 		} catch (IOException e) {
-			System.err.println("Error during the reading of the centroids: " + e.getMessage());
+			System.err.println("Error during the publishing of the centroids: " + e.getMessage());
 			System.exit(1);
 		}
 		
+		// Choose the number of reducers
+		if (numReducers <= 0) {
+			try {
+				numReducers = KMeansUtil.chooseNumReducers(conf, iterationsInputPath, centroids.size(), centroids.get(0).getPoint().getDimension());
+			} catch (IOException e) {
+				System.err.println("Error during the reading of the input size: " + e.getMessage());
+				System.exit(1);
+			}
+			System.out.println("Number of reducers: " + numReducers);
+		}
+		
 		// Run KMeans iterations
-		KMeansIterations(conf, outputPath, inputPath, numReducers);
+		ArrayList<Centroid> finalCentroids = KMeansIterations(conf, outputPath, iterationsInputPath, numReducers, checkpoint, modelCounts);
+		
+		// Delete the binary input
+		if (!iterationsInputPath.equals(inputPath)) {
+			try {
+				iterationsInputPath.getFileSystem(conf).delete(iterationsInputPath, true);
+			} catch (IOException e) {
+				System.err.println("Error during the deletion of the binary input: " + e.getMessage());
+			}
+		}
+		
+		// Label the points with the final centroids
+		if (options.containsKey("labels")) {
+			labelPoints(conf, inputPath, outputPath, finalCentroids);
+		}
 	}
 }
@@ -11,6 +11,25 @@ import java.util.Iterator;
  */
 public class KMeansCombiner extends Reducer<IntWritable, Point, IntWritable, Point> {
 
+	/**
+	 * Partial sum reused across the calls of reduce, the points are accumulated in place in its coordinates.
+	 * It has the format of the shuffle, see KMeansUtil.createPoint.
+	 */
+	private Point partialSum;
+
+	/**
+	 * Creates the partial sum in the format of the shuffle.
+	 *
+	 * @param context is the Hadoop Context object that provides the configuration.
+	 * @throws IOException if an I/O error occurs during the execution of the method.
+	 * @throws InterruptedException if the thread is interrupted during the execution of the method.
+	 */
+	@Override
+	protected void setup(Context context) throws IOException, InterruptedException {
+		super.setup(context);
+		partialSum = KMeansUtil.createPoint(context.getConfiguration());
+	}
+
 	/**
 	 * This method sum the coordinates of the points, associated with a specific centroid, in order to calculate their partial sum.
 	 *
@@ -24,8 +43,8 @@ public class KMeansCombiner extends Reducer<IntWritable, Point, IntWritable, Poi
 	protected void reduce(IntWritable centroidId, Iterable<Point> points, Context context) throws IOException, InterruptedException {
 		// Create an iterator for the points
 		final Iterator<Point> it = points.iterator();
-		// Get the first point and use it as the initial partial sum
-		Point partialSum = it.next();
+		// Copy the first point in the partial sum: Hadoop reuses the same object for every value
+		partialSum.set(it.next());
 		// Iterate over the remaining points
 		while (it.hasNext()) {
 			// call the method that sum the coordinates of the points
@@ -0,0 +1,69 @@
+package it.unipi.hadoop;
+
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapreduce.Mapper;
+
+import java.io.IOException;
+
+/**
+ * Mapper class of the preprocessing job that converts the CSV dataset into a SequenceFile of points.
+ * The iterations can then read the binary points without parsing any text.
+ * A sparse dataset is converted into a SequenceFile of sparse points.
+ */
+public class KMeansConversionMapper extends Mapper<Object, Text, NullWritable, Writable> {
+
+    /**
+     * Point reused for every input record, its coordinates are parsed in place.
+     */
+    private final Point point = new Point();
+
+    /**
+     * Sparse point reused for every input record of a sparse dataset.
+     */
+    private final SparsePoint sparsePoint = new SparsePoint();
+
+    /**
+     * Flag indicating whether the dataset is sparse.
+     */
+    private boolean sparse;
+
+    /**
+     * Reads the format of the dataset during the setup phase.
+     *
+     * @param context The context object for accessing the configuration.
+     * @throws IOException          Thrown when an I/O error occurs.
+     * @throws InterruptedException Thrown when a thread is interrupted while waiting, sleeping, or otherwise occupied.
+     */
+    @Override
+    protected void setup(Context context) throws IOException, InterruptedException {
+        super.setup(context);
+        sparse = context.getConfiguration().getBoolean(KMeansUtil.SPARSE_INPUT_KEY, false);
+    }
+
+    /**
+     * Parses a data point and emits it in binary form.
+     *
+     * @param key     The input key.
+     * @param value   The input value representing the coordinates of a data point.
+     * @param context The context object for writing the point.
+     * @throws InterruptedException Thrown when a thread is interrupted while waiting, sleeping, or otherwise occupied.
+     * @throws IOException          Thrown when an I/O error occurs.
+     */
+    @Override
+    protected void map(final Object key, final Text value, final Context context) throws InterruptedException, IOException {
+        // Skip the blank lines, e.g. at the end of the file
+        if (KMeansUtil.isBlankRecord(value)) {
+            return;
+        }
+        if (sparse) {
+            // The dimension is checked against the centroids by the iterations
+            sparsePoint.set(value, Integer.MAX_VALUE);
+            context.write(NullWritable.get(), sparsePoint);
+        } else {
+            point.set(value);
+            context.write(NullWritable.get(), point);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package it.unipi.hadoop;
+
+/**
+ * Custom Hadoop counters of the K-means iterations, collected by the driver in the run report.
+ * Counters only hold integers, so the SSE is written by the map tasks in their SSE files instead (see SseSummary).
+ */
+public enum KMeansCounter {
+
+    /**
+     * Number of points assigned to a centroid by the mappers.
+     */
+    POINTS,
+
+    /**
+     * Number of point-centroid distances computed by the mappers.
+     */
+    DISTANCE_COMPUTATIONS,
+
+    /**
+     * Number of point-centroid distances skipped by the mappers thanks to the pruning of the CentroidIndex.
+     */
+    DISTANCE_PRUNED,
+
+    /**
+     * Number of points summed by the reducers.
+     */
+    REDUCED_POINTS,
+
+    /**
+     * Time spent by the reducers after the shuffle, in milliseconds, from the setup to the cleanup of the reducer.
+     */
+    REDUCE_PHASE_MILLIS
+}
@@ -0,0 +1,176 @@
+package it.unipi.hadoop;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapreduce.Mapper;
+
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Mapper class of the k-means|| initialization.
+ * Every point is compared with the current candidates, and depending on the phase of the job:
+ * <ul>
+ *     <li>stats: the points are counted and their squared distances are summed per nearest candidate,
+ *     the results are emitted at the end of the task as partial sums of one coordinate (the cost),
+ *     whose instances are the number of points;</li>
+ *     <li>sample: each point is emitted with probability l * d^2 / cost, where d^2 is its squared distance
+ *     from the nearest candidate, l the expected number of sampled points and cost the sum of d^2 over the dataset.</li>
+ * </ul>
+ * When there are no candidates yet, every point has a squared distance of 1, so the first sample is uniform.
+ */
+public class KMeansInitMapper extends Mapper<Object, Writable, IntWritable, Point> {
+
+    /**
+     * Current candidates, shared with the other tasks of the JVM through the CentroidCache.
+     */
+    private CentroidSet candidates;
+
+    /**
+     * Index used to find the nearest candidate of each point.
+     */
+    private CentroidIndex index;
+
+    /**
+     * Point reused for every input record, its coordinates are parsed in place.
+     */
+    private final Point parsedPoint = new Point();
+
+    /**
+     * Output key reused for every input record.
+     */
+    private final IntWritable candidate_id = new IntWritable();
+
+    /**
+     * Flag indicating whether the job samples the points instead of computing the statistics of the candidates.
+     */
+    private boolean sampling;
+
+    /**
+     * Running statistics, one for each candidate, used by the stats phase.
+     */
+    private Point[] statistics;
+
+    /**
+     * Cost of a single point, added to the statistics of its nearest candidate.
+     */
+    private final Point cost = new Point(new double[1]);
+
+    /**
+     * Expected number of sampled points divided by the cost of the candidates, used by the sample phase.
+     */
+    private double samplingRate;
+
+    /**
+     * Random number generator of the sample phase.
+     */
+    private Random random;
+
+    /**
+     * Compares a data point with the candidates and updates the statistics or samples it.
+     *
+     * @param key     The input key.
+     * @param value   The input value representing the coordinates of a data point, as Text or as Point.
+     * @param context The context object for writing the sampled points.
+     * @throws InterruptedException Thrown when a thread is interrupted while waiting, sleeping, or otherwise occupied.
+     * @throws IOException          Thrown when an I/O error occurs.
+     */
+    @Override
+    protected void map(final Object key, final Writable value, final Context context) throws InterruptedException, IOException {
+        // Binary points are used as they are, text is parsed directly from its bytes
+        final Point point;
+        if (value instanceof Point) {
+            point = (Point) value;
+        } else {
+            // Skip the blank lines, e.g. at the end of the file
+            if (KMeansUtil.isBlankRecord((Text) value)) {
+                return;
+            }
+            point = parsedPoint;
+            point.set((Text) value);
+        }
+
+        // Find the nearest candidate and the squared distance from it
+        int nearest = 0;
+        double squaredDistance = 1.0;
+        if (candidates.size() > 0) {
+            nearest = index.nearest(point.getCoordinates());
+            squaredDistance = index.getSquaredDistance();
+        }
+
+        if (sampling) {
+            // Emit the point with probability proportional to its squared distance
+            if (random.nextDouble() < samplingRate * squaredDistance) {
+                candidate_id.set(nearest);
+                context.write(candidate_id, point);
+            }
+        } else {
+            // Add the cost of the point to the statistics of the nearest candidate
+            Point partialCost = statistics[nearest];
+            if (partialCost.getInstances() == 0) {
+                partialCost.clear(1);
+            }
+            cost.getCoordinates()[0] = squaredDistance;
+            partialCost.add(cost);
+        }
+    }
+
+    /**
+     * Reads the candidates and the parameters of the phase during the setup phase.
+     *
+     * @param context The context object for accessing the configuration.
+     * @throws IOException          Thrown when an I/O error occurs.
+     * @throws InterruptedException Thrown when a thread is interrupted while waiting, sleeping, or otherwise occupied.
+     */
+    @Override
+    protected void setup(Context context) throws IOException, InterruptedException {
+        super.setup(context);
+        Configuration conf = context.getConfiguration();
+
+        // Get the candidates of the step from the per-JVM cache
+        candidates = CentroidCache.get(context.getJobID().toString(), conf);
+        if (candidates.size() > 0) {
+            index = KMeansUtil.createCentroidIndex(candidates, conf);
+        }
+
+        sampling = KMeansUtil.INIT_PHASE_SAMPLE.equals(conf.get(KMeansUtil.INIT_PHASE_KEY));
+        if (sampling) {
+            samplingRate = conf.getDouble(KMeansUtil.INIT_SAMPLE_SIZE_KEY, 0.0) / conf.getDouble(KMeansUtil.INIT_COST_KEY, 1.0);
+            // Every task of every step draws a different sequence, the same one when the task is retried
+            long seed = conf.getLong(KMeansUtil.INIT_SEED_KEY, 0L);
+            int step = conf.getInt(KMeansUtil.ITERATION_KEY, 0);
+            int task = context.getTaskAttemptID().getTaskID().getId();
+            random = new Random(seed * 1000003L + step * 7919L + task);
+        } else {
+            // Prepare one empty statistic for each candidate, or a single one when there are no candidates
+            statistics = new Point[Math.max(1, candidates.size())];
+            for (int i = 0; i < statistics.length; i++) {
+                statistics[i] = new Point();
+                statistics[i].clear(0);
+            }
+        }
+    }
+
+    /**
+     * Emits the statistics of the candidates at the end of the task.
+     * Candidates without any nearest point are not emitted.
+     *
+     * @param context The context object for writing the candidate-statistics association.
+     * @throws IOException          Thrown when an I/O error occurs.
+     * @throws InterruptedException Thrown when a thread is interrupted while waiting, sleeping, or otherwise occupied.
+     */
+    @Override
+    protected void cleanup(Context context) throws IOException, InterruptedException {
+        if (!sampling) {
+            for (int i = 0; i < statistics.length; i++) {
+                if (statistics[i].getInstances() > 0) {
+                    candidate_id.set(i);
+                    context.write(candidate_id, statistics[i]);
+                }
+            }
+        }
+        super.cleanup(context);
+    }
+}
@@ -0,0 +1,174 @@
+package it.unipi.hadoop;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputCommitter;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Mapper of the labeling pass, a map-only job run over the dataset after the convergence.
+ * It writes the ID of the nearest centroid and the distance from it of every point, keyed by the byte offset of the
+ * point in its input file. Every task reads a single file, whose path is written once in a small side file of the task
+ * instead of in every key, so that the labels of a directory of files can be joined back to the points; the driver
+ * merges the side files into an index of the output files (see INDEX_FILE). Every task also writes the total SSE
+ * and the SSE of every cluster in its SSE file (see SseSummary). Dense and sparse datasets are both supported.
+ */
+public class KMeansLabelMapper extends Mapper<LongWritable, Text, LongWritable, ClusterAssignment> {
+
+    /**
+     * Prefix of the names of the side files with the input file of every task, followed by the number of the task.
+     */
+    public static final String INPUT_FILE_PREFIX = "_input-m-";
+
+    /**
+     * Name of the index of the labels, with the output file and the input file of every task separated by a tab.
+     */
+    public static final String INDEX_FILE = "_inputs.txt";
+
+    /**
+     * Final centroids, shared with the other tasks of the JVM through the CentroidCache.
+     */
+    private CentroidSet centroids;
+
+    /**
+     * Index used to find the nearest centroid of each dense point.
+     */
+    private CentroidIndex index;
+
+    /**
+     * Index used to find the nearest centroid of each sparse point, null when the dataset is dense.
+     */
+    private SparseCentroidIndex sparseIndex;
+
+    /**
+     * Point reused for every input record of a dense dataset.
+     */
+    private final Point point = new Point();
+
+    /**
+     * Sparse point reused for every input record of a sparse dataset.
+     */
+    private final SparsePoint sparsePoint = new SparsePoint();
+
+    /**
+     * Output value reused for every input record.
+     */
+    private final ClusterAssignment assignment = new ClusterAssignment();
+
+    /**
+     * Number of points labeled by the task.
+     */
+    private long points = 0;
+
+    /**
+     * Sum of the squared distances between the points of the task and their nearest centroid.
+     */
+    private double sse = 0.0;
+
+    /**
+     * Sum of the squared distances of the points of every cluster, in order of index.
+     */
+    private double[] clusterSse;
+
+    /**
+     * Labels a data point with its nearest centroid.
+     *
+     * @param key     The byte offset of the point in its input file.
+     * @param value   The input value representing the coordinates of a data point.
+     * @param context The context object for writing the point-cluster association.
+     * @throws InterruptedException Thrown when a thread is interrupted while waiting, sleeping, or otherwise occupied.
+     * @throws IOException          Thrown when an I/O error occurs.
+     */
+    @Override
+    protected void map(final LongWritable key, final Text value, final Context context) throws InterruptedException, IOException {
+        // Skip the blank lines, e.g. at the end of the file
+        if (KMeansUtil.isBlankRecord(value)) {
+            return;
+        }
+
+        int nearest;
+        double squaredDistance;
+        if (sparseIndex != null) {
+            sparsePoint.set(value, centroids.getDimension());
+            nearest = sparseIndex.nearest(sparsePoint);
+            squaredDistance = sparseIndex.getSquaredDistance();
+        } else {
+            point.set(value);
+            nearest = index.nearest(point.getCoordinates());
+            squaredDistance = index.getSquaredDistance();
+        }
+
+        points++;
+        sse += squaredDistance;
+        clusterSse[nearest] += squaredDistance;
+        assignment.set(centroids.getId(nearest), Math.sqrt(squaredDistance));
+        context.write(key, assignment);
+    }
+
+    /**
+     * Reads the final centroids from the Hadoop configuration, or from the distributed cache, during the setup phase.
+     *
+     * @param context The context object for accessing the configuration.
+     * @throws IOException          Thrown when an I/O error occurs.
+     * @throws InterruptedException Thrown when a thread is interrupted while waiting, sleeping, or otherwise occupied.
+     */
+    @Override
+    protected void setup(Context context) throws IOException, InterruptedException {
+        super.setup(context);
+        Configuration conf = context.getConfiguration();
+        centroids = CentroidCache.get(context.getJobID().toString(), conf);
+        if (conf.getBoolean(KMeansUtil.SPARSE_INPUT_KEY, false)) {
+            sparseIndex = new SparseCentroidIndex(centroids);
+        } else {
+            index = KMeansUtil.createCentroidIndex(centroids, conf);
+        }
+        clusterSse = new double[centroids.size()];
+    }
+
+    /**
+     * Publishes the number of points of the task in the counters, and writes its input file and its SSE,
+     * in total and for every cluster, at the end of the task.
+     *
+     * @param context The context object for accessing the counters and the output of the task.
+     * @throws IOException          Thrown when an I/O error occurs.
+     * @throws InterruptedException Thrown when a thread is interrupted while waiting, sleeping, or otherwise occupied.
+     */
+    @Override
+    protected void cleanup(Context context) throws IOException, InterruptedException {
+        context.getCounter(KMeansCounter.POINTS).increment(points);
+        writeInputFile(context);
+        if (points > 0) {
+            new SseSummary(sse, clusterSse).write(context);
+        }
+        super.cleanup(context);
+    }
+
+    /**
+     * Writes the path of the input file of the task in its work output path, so that it is committed with the task.
+     *
+     * @param context The context object for accessing the input split and the output of the task.
+     * @throws IOException          If an I/O error occurs, or if the output of the job is not written to files.
+     * @throws InterruptedException If the execution is interrupted.
+     */
+    private void writeInputFile(Context context) throws IOException, InterruptedException {
+        if (!(context.getOutputCommitter() instanceof FileOutputCommitter)) {
+            throw new IOException("The labels need a FileOutputCommitter, found "
+                    + context.getOutputCommitter().getClass().getName());
+        }
+        Path path = new Path(FileOutputFormat.getWorkOutputPath(context),
+                INPUT_FILE_PREFIX + String.format("%05d", context.getTaskAttemptID().getTaskID().getId()));
+        FileSystem fs = path.getFileSystem(context.getConfiguration());
+        try (FSDataOutputStream out = fs.create(path, false)) {
+            out.write(((FileSplit) context.getInputSplit()).getPath().toString().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -0,0 +1,385 @@
+package it.unipi.hadoop;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocalFileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.util.LineReader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+/**
+ * In-memory implementation of the K-means algorithm for datasets that fit in the memory of one node.
+ * The dataset is loaded once, then every iteration assigns the points to the centroids in parallel on all the cores
+ * (through the common fork/join pool) with the same CentroidIndex, Point and Centroid model of the MapReduce job,
+ * and the same convergence rule of the driver.
+ */
+public class KMeansLocal {
+
+    /**
+     * Number of chunks assigned to each core, so that the load is balanced when the cores run at different speeds.
+     */
+    private static final int CHUNKS_PER_CORE = 4;
+
+    /**
+     * Extension of the files of the dataset stored in the binary layout.
+     */
+    public static final String BINARY_EXTENSION = ".bin";
+
+    /**
+     * Coordinates of all the points of the dataset, in row-major order.
+     */
+    private final double[] points;
+
+    /**
+     * Number of points of the dataset.
+     */
+    private final int size;
+
+    /**
+     * Dimension of the points.
+     */
+    private final int dimension;
+
+    /**
+     * Constructor for creating a KMeansLocal object over a dataset already in memory.
+     *
+     * @param points    The coordinates of the points, in row-major order.
+     * @param size      The number of points.
+     * @param dimension The dimension of the points.
+     */
+    public KMeansLocal(double[] points, int size, int dimension) {
+        this.points = points;
+        this.size = size;
+        this.dimension = dimension;
+    }
+
+    /**
+     * Loads a dataset in memory.
+     * If the path is a directory, all the files inside it are loaded, except the hidden ones (starting with _ or .).
+     * Files with the .bin extension are read in the binary layout of KMeansUtil.writeCentroidsFile, the others as CSV.
+     * Files on the local file system are read through memory mapping, the others through the Hadoop file system.
+     *
+     * @param conf      The Hadoop configuration.
+     * @param inputPath The path of the dataset.
+     * @return The KMeansLocal object over the loaded dataset.
+     * @throws IOException If an I/O error occurs during the reading of the dataset.
+     */
+    public static KMeansLocal load(Configuration conf, Path inputPath) throws IOException {
+        FileSystem fs = inputPath.getFileSystem(conf);
+        Dataset dataset = new Dataset();
+
+        Point point = new Point();
+        for (FileStatus status : fs.listStatus(inputPath)) {
+            Path path = status.getPath();
+            String name = path.getName();
+            if (status.isDirectory() || name.startsWith("_") || name.startsWith(".")) {
+                continue;
+            }
+
+            if (fs instanceof LocalFileSystem) {
+                // Scan the local file through memory mapping
+                MappedPointReader.Layout layout = name.endsWith(BINARY_EXTENSION) ? MappedPointReader.Layout.BINARY : MappedPointReader.Layout.TEXT;
+                try (MappedPointReader reader = new MappedPointReader(((LocalFileSystem) fs).pathToFile(path), layout, ',')) {
+                    while (reader.next(point)) {
+                        dataset.add(point);
+                    }
+                }
+            } else if (name.endsWith(BINARY_EXTENSION)) {
+                for (Centroid centroid : KMeansUtil.readCentroidsFile(fs.open(path))) {
+                    dataset.add(centroid.getPoint());
+                }
+            } else {
+                try (InputStream in = fs.open(path)) {
+                    LineReader reader = new LineReader(in, conf);
+                    Text line = new Text();
+                    while (reader.readLine(line) > 0) {
+                        if (KMeansUtil.isBlankRecord(line)) {
+                            continue;
+                        }
+                        point.set(line);
+                        dataset.add(point);
+                    }
+                }
+            }
+        }
+        return new KMeansLocal(dataset.points, dataset.size, Math.max(dataset.dimension, 0));
+    }
+
+    /**
+     * Growable flat array of points, used while loading a dataset.
+     */
+    private static final class Dataset {
+
+        /**
+         * Maximum number of coordinates of the dataset, the largest array length supported by all the JVMs.
+         */
+        private static final int MAX_COORDINATES = Integer.MAX_VALUE - 8;
+
+        private double[] points = new double[1024];
+        private int size = 0;
+        private int dimension = -1;
+
+        /**
+         * Appends a point to the dataset.
+         *
+         * @param point The point to be appended.
+         * @throws IOException If the point has a different dimension from the previous ones,
+         *                     or if the dataset does not fit in a single array.
+         */
+        private void add(Point point) throws IOException {
+            if (dimension == -1) {
+                dimension = point.getDimension();
+            } else if (point.getDimension() != dimension) {
+                throw new IOException("Point " + size + " has dimension " + point.getDimension() + ", expected " + dimension);
+            }
+            // Grow the array when it is full, up to the largest array
+            long required = (long) (size + 1) * dimension;
+            if (required > MAX_COORDINATES) {
+                throw new IOException("The dataset has more than " + MAX_COORDINATES + " coordinates, too many for the local engine");
+            }
+            if (required > points.length) {
+                points = Arrays.copyOf(points, (int) Math.max(Math.min(points.length * 2L, MAX_COORDINATES), required));
+            }
+            System.arraycopy(point.getCoordinates(), 0, points, size * dimension, dimension);
+            size++;
+        }
+    }
+
+    /**
+     * Performs the iterations of the K-means algorithm until the shift of the centroids is below the threshold
+     * or the maximum number of iterations is reached.
+     *
+     * @param conf      The Hadoop configuration, used to choose the assignment strategy.
+     * @param centroids The initial centroids.
+     * @return The final centroids.
+     */
+    public ArrayList<Centroid> run(Configuration conf, ArrayList<Centroid> centroids) {
+        boolean converged = false;
+        int iteration = 0;
+
+        while (!converged && iteration < KMeansUtil.DEFAULT_MAX_ITERATIONS) {
+            ArrayList<Centroid> currentCentroids = iterate(conf, centroids);
+
+            // Calculate the shift and check if converged
+            double shift = KMeansUtil.calculateCentroidShift(currentCentroids, centroids);
+            converged = (shift < KMeansUtil.DEFAULT_THRESHOLD);
+
+            // Log the status, there are no reducers in the local engine
+            KMeansUtil.logIterationInfo(iteration, shift, 0);
+            centroids = currentCentroids;
+            iteration++;
+        }
+        return centroids;
+    }
+
+    /**
+     * Computes the initial centroids with the k-means|| initialization of KMeansParallelInit,
+     * with the passes over the dataset running in memory.
+     *
+     * @param conf The Hadoop configuration, with the parameters of the initialization.
+     * @param k    The number of centroids.
+     * @return The initial centroids, with IDs from 0 to k - 1.
+     * @throws IllegalArgumentException If the dataset has less than k points.
+     */
+    public ArrayList<Centroid> initialize(Configuration conf, int k) throws IllegalArgumentException {
+        if (size == 0) {
+            throw new IllegalArgumentException("The dataset is empty");
+        }
+        Random random = new Random(conf.getLong(KMeansUtil.INIT_SEED_KEY, 0L));
+        double oversampling = conf.getDouble(KMeansUtil.INIT_OVERSAMPLING_KEY, KMeansUtil.DEFAULT_INIT_OVERSAMPLING) * k;
+        int rounds = conf.getInt(KMeansUtil.INIT_ROUNDS_KEY, KMeansUtil.DEFAULT_INIT_ROUNDS);
+
+        // The first candidate is chosen uniformly
+        ArrayList<Centroid> candidates = new ArrayList<>();
+        candidates.add(new Centroid(0, getPoint(random.nextInt(size))));
+        double[] squaredDistances = new double[size];
+        int[] nearest = new int[size];
+        double cost = findNearestCandidates(conf, candidates, squaredDistances, nearest);
+
+        // Oversample the points far from the candidates
+        for (int round = 0; round < rounds && cost > 0.0; round++) {
+            int previousSize = candidates.size();
+            for (int i = 0; i < size; i++) {
+                if (random.nextDouble() < oversampling * squaredDistances[i] / cost) {
+                    candidates.add(new Centroid(candidates.size(), getPoint(i)));
+                }
+            }
+            if (candidates.size() > previousSize) {
+                cost = findNearestCandidates(conf, candidates, squaredDistances, nearest);
+            }
+        }
+
+        // The weights are the number of points nearest to each candidate
+        double[] weights = new double[candidates.size()];
+        for (int i = 0; i < size; i++) {
+            weights[nearest[i]]++;
+        }
+        return KMeansParallelInit.reduce(candidates, weights, k, random);
+    }
+
+    /**
+     * Finds the nearest candidate of every point and the squared distance from it, in parallel.
+     *
+     * @param conf             The Hadoop configuration, used to choose the assignment strategy.
+     * @param candidates       The candidates.
+     * @param squaredDistances The array where the squared distances are stored.
+     * @param nearest          The array where the indexes of the nearest candidates are stored.
+     * @return The sum of the squared distances.
+     */
+    private double findNearestCandidates(Configuration conf, ArrayList<Centroid> candidates, double[] squaredDistances, int[] nearest) {
+        CentroidSet candidateSet = new CentroidSet(candidates);
+        int chunks = Math.max(1, Math.min(size, Runtime.getRuntime().availableProcessors() * CHUNKS_PER_CORE));
+
+        return IntStream.range(0, chunks)
+                .parallel()
+                .mapToDouble(chunk -> {
+                    CentroidIndex index = KMeansUtil.createCentroidIndex(candidateSet, conf);
+                    double[] coordinates = new double[dimension];
+                    double cost = 0.0;
+                    for (int i = (int) ((long) size * chunk / chunks); i < (int) ((long) size * (chunk + 1) / chunks); i++) {
+                        System.arraycopy(points, i * dimension, coordinates, 0, dimension);
+                        nearest[i] = index.nearest(coordinates);
+                        squaredDistances[i] = index.getSquaredDistance();
+                        cost += squaredDistances[i];
+                    }
+                    return cost;
+                })
+                .sum();
+    }
+
+    /**
+     * Copies the coordinates of a point of the dataset.
+     *
+     * @param index The index of the point.
+     * @return A copy of the coordinates of the point.
+     */
+    private double[] getPoint(int index) {
+        return Arrays.copyOfRange(points, index * dimension, (index + 1) * dimension);
+    }
+
+    /**
+     * Performs one iteration of the K-means algorithm.
+     * The dataset is split in chunks, the partial sums of every chunk are computed in parallel and then merged.
+     * A centroid without any assigned point keeps its previous position.
+     *
+     * @param conf      The Hadoop configuration, used to choose the assignment strategy.
+     * @param centroids The centroids of the current iteration.
+     * @return The centroids of the next iteration.
+     */
+    public ArrayList<Centroid> iterate(Configuration conf, ArrayList<Centroid> centroids) {
+        CentroidSet centroidSet = new CentroidSet(centroids);
+        int chunks = Math.max(1, Math.min(size, Runtime.getRuntime().availableProcessors() * CHUNKS_PER_CORE));
+
+        Point[] partialSums = IntStream.range(0, chunks)
+                .parallel()
+                .mapToObj(chunk -> assign(conf, centroidSet, (int) ((long) size * chunk / chunks), (int) ((long) size * (chunk + 1) / chunks)))
+                .reduce(KMeansLocal::merge)
+                .orElseGet(() -> emptyPartialSums(centroidSet.size()));
+
+        // Average the partial sums to obtain the new centroids
+        ArrayList<Centroid> nextCentroids = new ArrayList<>(centroids.size());
+        for (int i = 0; i < centroids.size(); i++) {
+            Centroid centroid = centroids.get(i);
+            double[] coordinates;
+            if (partialSums[i].getInstances() > 0) {
+                partialSums[i].average();
+                coordinates = partialSums[i].getCoordinates();
+            } else {
+                coordinates = centroid.getPoint().getCoordinates().clone();
+            }
+            nextCentroids.add(new Centroid(centroid.getCentroid_id().get(), coordinates));
+        }
+        return nextCentroids;
+    }
+
+    /**
+     * Assigns a range of points to their nearest centroid and sums them per centroid.
+     *
+     * @param conf        The Hadoop configuration, used to choose the assignment strategy.
+     * @param centroidSet The centroids of the current iteration.
+     * @param from        The index of the first point of the range.
+     * @param to          The index after the last point of the range.
+     * @return The partial sums of the points of the range, one for each centroid.
+     */
+    private Point[] assign(Configuration conf, CentroidSet centroidSet, int from, int to) {
+        // The index keeps the state of the last query, so each chunk uses its own
+        CentroidIndex index = KMeansUtil.createCentroidIndex(centroidSet, conf);
+        Point[] partialSums = emptyPartialSums(centroidSet.size());
+        Point point = new Point(new double[dimension]);
+        double[] coordinates = point.getCoordinates();
+
+        for (int i = from; i < to; i++) {
+            System.arraycopy(points, i * dimension, coordinates, 0, dimension);
+            Point partialSum = partialSums[index.nearest(coordinates)];
+            if (partialSum.getInstances() == 0) {
+                partialSum.clear(dimension);
+            }
+            partialSum.add(point);
+        }
+        return partialSums;
+    }
+
+    /**
+     * Merges two arrays of partial sums, the result is accumulated in the first one.
+     *
+     * @param first  The first array of partial sums.
+     * @param second The second array of partial sums.
+     * @return The first array, containing the merged partial sums.
+     */
+    private static Point[] merge(Point[] first, Point[] second) {
+        for (int i = 0; i < first.length; i++) {
+            if (second[i].getInstances() == 0) {
+                continue;
+            }
+            if (first[i].getInstances() == 0) {
+                first[i].set(second[i]);
+            } else {
+                first[i].add(second[i]);
+            }
+        }
+        return first;
+    }
+
+    /**
+     * Creates an array of empty partial sums.
+     *
+     * @param k The number of partial sums.
+     * @return The array of empty partial sums.
+     */
+    private static Point[] emptyPartialSums(int k) {
+        Point[] partialSums = new Point[k];
+        for (int i = 0; i < k; i++) {
+            partialSums[i] = new Point();
+            partialSums[i].clear(0);
+        }
+        return partialSums;
+    }
+
+    /* Getters */
+
+    /**
+     * Retrieves the number of points of the dataset.
+     *
+     * @return The number of points.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Retrieves the dimension of the points.
+     *
+     * @return The dimension of the points.
+     */
+    public int getDimension() {
+        return dimension;
+    }
+}
@@ -1,57 +1,180 @@
 package it.unipi.hadoop;
 
-
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.IntWritable;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.mapreduce.Mapper;
 
 import java.io.IOException;
-import java.util.ArrayList;
-
-import static it.unipi.hadoop.KMeansUtil.readCentroidsFromConfiguration;
+import java.util.Random;
 
 /**
  * Mapper class for the K-Means algorithm.
  * Maps each data point to its nearest centroid.
+ * When in-mapper combining is enabled, the points are summed per centroid inside the mapper
+ * and only one partial sum per centroid is emitted at the end of the task.
+ * The input can be either the CSV text or the binary points written by the KMeansConversionMapper.
+ * In a mini-batch iteration that samples the records, each record is used with probability kmeans.minibatch.fraction
+ * (see KMeansUtil.getRecordSamplingFraction).
+ * In a sweep every point is assigned to the nearest centroid of each model still iterating, in the same pass.
  */
-public class KMeansMapper extends Mapper<Object, Text, IntWritable, Point> {
+public class KMeansMapper extends Mapper<Object, Writable, IntWritable, Point> {
+
+    /**
+     * Centroids of the current iteration, shared with the other tasks of the JVM through the CentroidCache.
+     */
+    private CentroidSet centroids;
+
+    /**
+     * Index used to find the nearest centroid of each point, null in a sweep, where every model has its own index.
+     */
+    private CentroidIndex index;
+
+    /**
+     * Point reused for every input record, its coordinates are parsed in place.
+     * It has the format of the shuffle, see KMeansUtil.createPoint.
+     */
+    private Point parsedPoint;
+
+    /**
+     * Output key reused for every input record.
+     */
+    private final IntWritable centroid_id = new IntWritable();
+
+    /**
+     * Flag indicating whether the points are combined inside the mapper.
+     */
+    private boolean inMapperCombining;
+
+    /**
+     * Running partial sums, one for each centroid, used by the in-mapper combining.
+     */
+    private Point[] partialSums;
+
+    /**
+     * Indexes of the models of a sweep, one for each model, null when the job runs a single model.
+     */
+    private CentroidIndex[] modelIndexes;
+
+    /**
+     * Number of centroids of every model of the sweep.
+     */
+    private int[] modelSizes;
+
+    /**
+     * Index of the first centroid of every model of the sweep.
+     */
+    private int[] modelOffsets;
+
+    /**
+     * Indices of the models of the sweep that are still iterating.
+     */
+    private int[] activeModels;
+
+    /**
+     * Sum of the squared distances between the points of the task and their nearest centroid, for every model of the sweep.
+     */
+    private double[] modelSse;
+
+    /**
+     * Fraction of the records used by a mini-batch iteration that samples the records.
+     */
+    private double sampledFraction;
+
+    /**
+     * Random number generator of the record sampling, null when all the records are used.
+     */
+    private Random random;
+
+    /**
+     * Number of points assigned by the task.
+     */
+    private long points = 0;
 
-    private static ArrayList<Centroid> centroids;
+    /**
+     * Sum of the squared distances between the points of the task and their nearest centroid.
+     */
+    private double sse = 0.0;
 
     /**
      * Maps each data point to its nearest centroid.
      *
      * @param key     The input key.
-     * @param value   The input value representing the coordinates of a data point.
+     * @param value   The input value representing the coordinates of a data point, as Text or as Point.
+     * @param context The context object for writing the centroid-point association.
+     * @throws InterruptedException Thrown when a thread is interrupted while waiting, sleeping, or otherwise occupied.
+     * @throws IOException          Thrown when an I/O error occurs.
+     */
+    protected void map(final Object key, final Writable value, final Context context) throws InterruptedException, IOException {
+        // Skip the records outside the mini-batch before parsing them
+        if (random != null && random.nextDouble() >= sampledFraction) {
+            return;
+        }
+
+        // Binary points are used as they are, text is parsed directly from its bytes
+        final Point point;
+        if (value instanceof Point) {
+            point = (Point) value;
+        } else {
+            // Skip the blank lines, e.g. at the end of the file
+            if (KMeansUtil.isBlankRecord((Text) value)) {
+                return;
+            }
+            point = parsedPoint;
+            point.set((Text) value);
+        }
+
+        points++;
+        if (modelIndexes == null) {
+            // Find the nearest centroid
+            int nearest = index.nearest(point.getCoordinates());
+            sse += index.getSquaredDistance();
+            assign(nearest, point, context);
+        } else {
+            // Assign the point to the nearest centroid of every model of the sweep that is still iterating
+            for (int m : activeModels) {
+                int nearest = modelIndexes[m].nearest(point.getCoordinates());
+                double distance = modelIndexes[m].getSquaredDistance();
+                sse += distance;
+                modelSse[m] += distance;
+                assign(modelOffsets[m] + nearest, point, context);
+            }
+        }
+    }
+
+    /**
+     * Adds a point to the running partial sum of its centroid, or emits it when the in-mapper combining is disabled.
+     *
+     * @param nearest The index of the nearest centroid.
+     * @param point   The point.
      * @param context The context object for writing the centroid-point association.
      * @throws InterruptedException Thrown when a thread is interrupted while waiting, sleeping, or otherwise occupied.
      * @throws IOException          Thrown when an I/O error occurs.
      */
-    protected void map(final Object key, final Text value, final Context context) throws InterruptedException, IOException {
-        // Create a Point object from the input text
-        Point point = new Point(value.toString());
-        
-        // Initialize variables to store the ID of the nearest centroid and the distance to it
-        IntWritable centroid_id = null;
-        double distanceFromCentroid = Double.MAX_VALUE;
-        
-        // Iterate over all centroids to find the nearest one
-        for (Centroid centroid : centroids) {
-            // Calculate the distance between the current centroid and the point
-            double distance = centroid.getPoint().getDistance(point);
-            // If this is the first centroid or if it is closer than the previous nearest centroid,
-            // update the nearest centroid ID and distance
-            if (centroid_id == null || distance < distanceFromCentroid) {
-                centroid_id = centroid.getCentroid_id();
-                distanceFromCentroid = distance;
+    private void assign(int nearest, Point point, Context context) throws InterruptedException, IOException {
+        if (inMapperCombining) {
+            // Add the point to the running partial sum of the nearest centroid
+            Point partialSum = partialSums[nearest];
+            if (partialSum.getInstances() == 0) {
+                partialSum.clear(point.getDimension());
+            }
+            partialSum.add(point);
+        } else {
+            // Emit the ID of the nearest centroid and the point, the binary points are copied into the format of the shuffle
+            centroid_id.set(centroids.getId(nearest));
+            if (point.getClass() == parsedPoint.getClass()) {
+                context.write(centroid_id, point);
+            } else {
+                parsedPoint.set(point);
+                context.write(centroid_id, parsedPoint);
             }
         }
-        // Emit the ID of the nearest centroid and the point
-        context.write(centroid_id, point);
     }
 
     /**
-     * Reads the centroids from the Hadoop configuration during the setup phase.
+     * Reads the centroids from the Hadoop configuration, or from the distributed cache, during the setup phase.
+     * The centroids are loaded only by the first task of the iteration running in the JVM, the others reuse them.
      *
      * @param context The context object for accessing the configuration.
      * @throws IOException          Thrown when an I/O error occurs.
@@ -59,12 +182,90 @@ public class KMeansMapper extends Mapper<Object, Text, IntWritable, Point> {
      */
     @Override
     protected void setup(Context context) throws IOException, InterruptedException {
-        
+
         // Call the superclass setup method
         super.setup(context);
-        // Load the centroids from the Hadoop configuration and store them in the class variable
-        centroids = readCentroidsFromConfiguration(context.getConfiguration());
+        // Get the centroids of the iteration from the per-JVM cache
+        centroids = CentroidCache.get(context.getJobID().toString(), context.getConfiguration());
+        parsedPoint = KMeansUtil.createPoint(context.getConfiguration());
+
+        // Split the centroids of a sweep into the models, each one with its own index
+        modelSizes = context.getConfiguration().getInts(KMeansUtil.SWEEP_MODELS_KEY);
+        if (modelSizes.length == 0) {
+            index = KMeansUtil.createCentroidIndex(centroids, context.getConfiguration());
+        } else {
+            modelIndexes = new CentroidIndex[modelSizes.length];
+            modelOffsets = new int[modelSizes.length];
+            modelSse = new double[modelSizes.length];
+            for (int m = 0, offset = 0; m < modelSizes.length; offset += modelSizes[m], m++) {
+                modelOffsets[m] = offset;
+                modelIndexes[m] = KMeansUtil.createCentroidIndex(centroids.range(offset, offset + modelSizes[m]), context.getConfiguration());
+            }
+            activeModels = context.getConfiguration().getInts(KMeansUtil.SWEEP_ACTIVE_KEY);
+        }
+
+        // Prepare one empty partial sum for each centroid if the points are combined in the mapper
+        inMapperCombining = context.getConfiguration().getBoolean(KMeansUtil.IN_MAPPER_COMBINING_KEY, KMeansUtil.DEFAULT_IN_MAPPER_COMBINING);
+        if (inMapperCombining) {
+            partialSums = new Point[centroids.size()];
+            for (int i = 0; i < partialSums.length; i++) {
+                partialSums[i] = KMeansUtil.createPoint(context.getConfiguration());
+                partialSums[i].clear(0);
+            }
+        }
+
+        // Sample the records if the mini-batch is not made of sampled splits, or not only of them
+        Configuration conf = context.getConfiguration();
+        sampledFraction = KMeansUtil.getRecordSamplingFraction(conf);
+        if (sampledFraction < 1.0) {
+            // Every task of every iteration draws a different sequence, the same one when the task is retried
+            long seed = conf.getLong(KMeansUtil.MINIBATCH_SEED_KEY, 0L);
+            int iteration = conf.getInt(KMeansUtil.ITERATION_KEY, 0);
+            int task = context.getTaskAttemptID().getTaskID().getId();
+            random = new Random(seed * 1000003L + iteration * 7919L + task);
+        }
     }
-    
+
+    /**
+     * Emits the partial sums of the in-mapper combining at the end of the task, updates the counters of the task
+     * and writes its SSE file (see SseSummary).
+     * Centroids without any assigned point are not emitted.
+     *
+     * @param context The context object for writing the centroid-partial sum association.
+     * @throws IOException          Thrown when an I/O error occurs.
+     * @throws InterruptedException Thrown when a thread is interrupted while waiting, sleeping, or otherwise occupied.
+     */
+    @Override
+    protected void cleanup(Context context) throws IOException, InterruptedException {
+        // Publish the metrics of the task, in a sweep the SSE is the sum over the models
+        long distanceComputations = 0;
+        long comparedCentroids = 0;
+        if (modelIndexes == null) {
+            distanceComputations = index.getDistanceComputations();
+            comparedCentroids = centroids.size();
+        } else {
+            for (int m : activeModels) {
+                distanceComputations += modelIndexes[m].getDistanceComputations();
+                comparedCentroids += modelSizes[m];
+            }
+        }
+        context.getCounter(KMeansCounter.POINTS).increment(points);
+        if (points > 0) {
+            new SseSummary(sse, modelSse == null ? new double[0] : modelSse).write(context);
+        }
+        context.getCounter(KMeansCounter.DISTANCE_COMPUTATIONS).increment(distanceComputations);
+        context.getCounter(KMeansCounter.DISTANCE_PRUNED).increment(points * comparedCentroids - distanceComputations);
+
+        if (inMapperCombining) {
+            for (int i = 0; i < partialSums.length; i++) {
+                if (partialSums[i].getInstances() > 0) {
+                    centroid_id.set(centroids.getId(i));
+                    context.write(centroid_id, partialSums[i]);
+                }
+            }
+        }
+        super.cleanup(context);
+    }
+
 }
 
@@ -0,0 +1,138 @@
+package it.unipi.hadoop;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+/**
+ * Final model of a K-means run: all the centroids, with the number of points assigned to each one.
+ * It is written to the output path by the MapReduce runs, and read by the incremental runs, which fold new points
+ * into it weighting every centroid with its number of points. The file has one line per centroid, with the ID,
+ * the number of points and the coordinates separated by spaces, e.g. "0\t1200\t0.5 1.25".
+ * Unlike the part files, it also contains the centroids without points in the last iteration.
+ */
+public class KMeansModel {
+
+    /**
+     * Name of the model file in the output path, hidden from the input formats like the other side files.
+     */
+    public static final String FILE_NAME = "_model.txt";
+
+    /**
+     * Centroids of the model, sorted by ID.
+     */
+    private final ArrayList<Centroid> centroids;
+
+    /**
+     * Number of points of every centroid, in order of ID.
+     */
+    private final long[] counts;
+
+    /**
+     * Constructor for creating a KMeansModel object.
+     *
+     * @param centroids The centroids of the model, sorted by ID.
+     * @param counts    The number of points of every centroid, in order of ID.
+     */
+    public KMeansModel(ArrayList<Centroid> centroids, long[] counts) {
+        this.centroids = centroids;
+        this.counts = counts;
+    }
+
+    /**
+     * Writes the model to the output path of a run.
+     *
+     * @param conf       The Hadoop configuration.
+     * @param outputPath The output path of the run.
+     * @throws IOException If an I/O error occurs during the writing of the model.
+     */
+    public void write(Configuration conf, Path outputPath) throws IOException {
+        Path path = new Path(outputPath, FILE_NAME);
+        FileSystem fs = path.getFileSystem(conf);
+        try (BufferedWriter out = new BufferedWriter(new OutputStreamWriter(fs.create(path, true), StandardCharsets.UTF_8))) {
+            for (Centroid centroid : centroids) {
+                int id = centroid.getCentroid_id().get();
+                out.write(id + "\t" + counts[id] + "\t" + centroid.getPoint().toString());
+                out.newLine();
+            }
+        }
+    }
+
+    /**
+     * Reads the model from the output path of a previous run.
+     *
+     * @param conf       The Hadoop configuration.
+     * @param outputPath The output path of the previous run.
+     * @return The model of the previous run.
+     * @throws IOException If the model is missing or damaged.
+     */
+    public static KMeansModel read(Configuration conf, Path outputPath) throws IOException {
+        Path path = new Path(outputPath, FILE_NAME);
+        FileSystem fs = path.getFileSystem(conf);
+        if (!fs.exists(path)) {
+            throw new IOException("No model found in " + outputPath);
+        }
+
+        ArrayList<Centroid> centroids = new ArrayList<>();
+        ArrayList<Long> counts = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(fs.open(path), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t");
+                if (fields.length != 3 || Integer.parseInt(fields[0]) != centroids.size()) {
+                    throw new IOException("Invalid line " + (centroids.size() + 1) + " of the model " + path);
+                }
+                String[] coordinates = fields[2].split(" ");
+                double[] point = new double[coordinates.length];
+                for (int i = 0; i < point.length; i++) {
+                    point[i] = Double.parseDouble(coordinates[i]);
+                }
+                centroids.add(new Centroid(centroids.size(), point));
+                counts.add(Long.parseLong(fields[1]));
+            }
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid number in the model " + path, e);
+        }
+        return new KMeansModel(centroids, counts.stream().mapToLong(Long::longValue).toArray());
+    }
+
+    /**
+     * Scales the number of points of every centroid by a decay factor, so that the old points weigh less than
+     * the new ones in the next incremental run.
+     *
+     * @param factor The decay factor, between 0 and 1.
+     */
+    public void decay(double factor) {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = Math.round(counts[i] * factor);
+        }
+    }
+
+    /* Getters */
+
+    /**
+     * Retrieves the centroids of the model.
+     *
+     * @return The centroids, sorted by ID.
+     */
+    public ArrayList<Centroid> getCentroids() {
+        return centroids;
+    }
+
+    /**
+     * Retrieves the number of points of every centroid.
+     *
+     * @return The counts of the centroids, in order of ID.
+     */
+    public long[] getCounts() {
+        return counts;
+    }
+}
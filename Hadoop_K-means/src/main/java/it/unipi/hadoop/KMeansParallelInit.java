@@ -0,0 +1,346 @@
+package it.unipi.hadoop;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.mapreduce.Job;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Scalable k-means++ (k-means||) initialization of the centroids.
+ * Instead of choosing the k seeds one at a time with a pass over the dataset each, a few rounds sample
+ * about l = kmeans.init.oversampling * k points each, with probability proportional to their squared distance
+ * from the candidates chosen so far. The candidates are then weighted by the number of points nearest to them
+ * and reduced to k centroids with a weighted k-means++ followed by a few weighted Lloyd iterations, in memory.
+ * The passes over the dataset run as MapReduce jobs with the KMeansInitMapper, or in memory with KMeansLocal.
+ */
+public class KMeansParallelInit {
+
+    /**
+     * Number of weighted Lloyd iterations used to refine the k-means++ seeds of the candidates.
+     */
+    private static final int LLOYD_ITERATIONS = 10;
+
+    /**
+     * Maximum number of attempts to sample the first candidate, in case a sample is empty.
+     */
+    private static final int MAX_FIRST_SAMPLE_ATTEMPTS = 10;
+
+    /**
+     * Statistics of the candidates computed by a pass over the dataset.
+     */
+    private static final class Statistics {
+
+        private final double[] weights;
+        private double cost = 0.0;
+        private long points = 0;
+
+        private Statistics(int candidates) {
+            this.weights = new double[candidates];
+        }
+    }
+
+    /**
+     * Computes the initial centroids with MapReduce passes over the dataset.
+     * The candidates of every step and the outputs of the jobs are stored in a directory next to the output path,
+     * which is deleted at the end.
+     *
+     * @param conf       The Hadoop configuration, it is not modified.
+     * @param inputPath  The path of the dataset.
+     * @param outputPath The output path of the K-means job.
+     * @param k          The number of centroids.
+     * @return The initial centroids, with IDs from 0 to k - 1.
+     * @throws IOException If an I/O error occurs, a job fails or the dataset has less than k distinct points.
+     */
+    public static ArrayList<Centroid> run(Configuration conf, Path inputPath, Path outputPath, int k) throws IOException {
+        Configuration initConf = new Configuration(conf);
+        Path initPath = outputPath.suffix("_init");
+        FileSystem fs = initPath.getFileSystem(initConf);
+        fs.delete(initPath, true);
+
+        Random random = new Random(initConf.getLong(KMeansUtil.INIT_SEED_KEY, 0L));
+        double oversampling = initConf.getDouble(KMeansUtil.INIT_OVERSAMPLING_KEY, KMeansUtil.DEFAULT_INIT_OVERSAMPLING) * k;
+        int rounds = initConf.getInt(KMeansUtil.INIT_ROUNDS_KEY, KMeansUtil.DEFAULT_INIT_ROUNDS);
+        ArrayList<Centroid> candidates = new ArrayList<>();
+        Statistics statistics;
+        int step = 0;
+
+        try {
+            // Without candidates the cost is the number of points, so the first sample is uniform
+            statistics = computeStatistics(initConf, inputPath, initPath, candidates, step++);
+            if (statistics.points == 0) {
+                throw new IOException("The dataset " + inputPath + " is empty");
+            }
+            ArrayList<Point> sample = new ArrayList<>();
+            for (int attempt = 0; attempt < MAX_FIRST_SAMPLE_ATTEMPTS && sample.isEmpty(); attempt++) {
+                sample = sample(initConf, inputPath, initPath, candidates, oversampling, statistics.cost, step++);
+            }
+            if (sample.isEmpty()) {
+                throw new IOException("Unable to sample the first candidate from " + inputPath);
+            }
+            addCandidate(candidates, sample.get(random.nextInt(sample.size())));
+            statistics = computeStatistics(initConf, inputPath, initPath, candidates, step++);
+
+            // Oversample the points far from the candidates
+            for (int round = 0; round < rounds && statistics.cost > 0.0; round++) {
+                sample = sample(initConf, inputPath, initPath, candidates, oversampling, statistics.cost, step++);
+                if (sample.isEmpty()) {
+                    continue;
+                }
+                for (Point point : sample) {
+                    addCandidate(candidates, point);
+                }
+                statistics = computeStatistics(initConf, inputPath, initPath, candidates, step++);
+            }
+        } finally {
+            fs.delete(initPath, true);
+        }
+
+        // The weights are the number of points nearest to each candidate
+        return reduce(candidates, statistics.weights, k, random);
+    }
+
+    /**
+     * Reduces the weighted candidates to k centroids, with a weighted k-means++ seeding
+     * followed by weighted Lloyd iterations.
+     *
+     * @param candidates The candidates, with IDs equal to their position in the list.
+     * @param weights    The weights of the candidates.
+     * @param k          The number of centroids.
+     * @param random     The random number generator of the k-means++ seeding.
+     * @return The centroids, with IDs from 0 to k - 1.
+     * @throws IllegalArgumentException If there are less than k candidates.
+     */
+    public static ArrayList<Centroid> reduce(ArrayList<Centroid> candidates, double[] weights, int k, Random random) throws IllegalArgumentException {
+        int m = candidates.size();
+        if (m < k) {
+            throw new IllegalArgumentException("Only " + m + " candidates found for " + k + " centroids");
+        }
+        CentroidSet candidateSet = new CentroidSet(candidates);
+        int dimension = candidateSet.getDimension();
+        double[] coordinates = candidateSet.getCoordinates();
+
+        // Weighted k-means++ seeding: the first seed is chosen by weight, the others by weight times squared distance
+        double[] squaredDistances = new double[m];
+        Arrays.fill(squaredDistances, Double.POSITIVE_INFINITY);
+        boolean[] taken = new boolean[m];
+        double[] scores = new double[m];
+        ArrayList<Centroid> centroids = new ArrayList<>(k);
+        int seed = pick(weights, taken, random);
+        for (int c = 0; c < k; c++) {
+            taken[seed] = true;
+            centroids.add(new Centroid(c, Arrays.copyOfRange(coordinates, seed * dimension, (seed + 1) * dimension)));
+            for (int i = 0; i < m; i++) {
+                squaredDistances[i] = Math.min(squaredDistances[i], candidateSet.getSquaredDistance(i, seed));
+                scores[i] = taken[i] ? 0.0 : weights[i] * squaredDistances[i];
+            }
+            seed = pick(scores, taken, random);
+        }
+
+        // Weighted Lloyd iterations over the candidates
+        double[] point = new double[dimension];
+        for (int iteration = 0; iteration < LLOYD_ITERATIONS; iteration++) {
+            CentroidIndex index = new LinearCentroidIndex(new CentroidSet(centroids));
+            Point[] partialSums = new Point[k];
+            double[] clusterWeights = new double[k];
+            for (int c = 0; c < k; c++) {
+                partialSums[c] = new Point();
+                partialSums[c].clear(dimension);
+            }
+            for (int i = 0; i < m; i++) {
+                System.arraycopy(coordinates, i * dimension, point, 0, dimension);
+                int nearest = index.nearest(point);
+                double[] sum = partialSums[nearest].getCoordinates();
+                for (int j = 0; j < dimension; j++) {
+                    sum[j] += weights[i] * point[j];
+                }
+                clusterWeights[nearest] += weights[i];
+            }
+
+            // Move every centroid to the weighted mean of its candidates, empty clusters keep their position
+            boolean moved = false;
+            for (int c = 0; c < k; c++) {
+                if (clusterWeights[c] == 0.0) {
+                    continue;
+                }
+                double[] sum = partialSums[c].getCoordinates();
+                double[] centroid = centroids.get(c).getPoint().getCoordinates();
+                for (int j = 0; j < dimension; j++) {
+                    double mean = sum[j] / clusterWeights[c];
+                    moved |= mean != centroid[j];
+                    centroid[j] = mean;
+                }
+            }
+            if (!moved) {
+                break;
+            }
+        }
+        return centroids;
+    }
+
+    /**
+     * Picks an index with probability proportional to its score.
+     * When all the scores are zero, the first index not yet taken is picked.
+     *
+     * @param scores The non-negative scores.
+     * @param taken  The flags of the indexes already taken.
+     * @param random The random number generator.
+     * @return The picked index.
+     */
+    private static int pick(double[] scores, boolean[] taken, Random random) {
+        double total = 0.0;
+        for (double score : scores) {
+            total += score;
+        }
+        if (total > 0.0) {
+            double threshold = random.nextDouble() * total;
+            int last = -1;
+            for (int i = 0; i < scores.length; i++) {
+                if (scores[i] > 0.0) {
+                    last = i;
+                    threshold -= scores[i];
+                    if (threshold < 0.0) {
+                        return i;
+                    }
+                }
+            }
+            // Rounding errors can leave a small remainder, the last index with a positive score gets it
+            return last;
+        }
+        for (int i = 0; i < taken.length; i++) {
+            if (!taken[i]) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Adds a point to the candidates, with the next ID.
+     *
+     * @param candidates The current candidates.
+     * @param point      The point to be added, its coordinates are not copied.
+     */
+    private static void addCandidate(ArrayList<Centroid> candidates, Point point) {
+        candidates.add(new Centroid(candidates.size(), point.getCoordinates()));
+    }
+
+    /**
+     * Runs a job of the initialization with the current candidates.
+     *
+     * @param conf       The Hadoop configuration of the initialization.
+     * @param inputPath  The path of the dataset.
+     * @param initPath   The directory of the initialization.
+     * @param candidates The current candidates.
+     * @param phase      The phase of the job.
+     * @param step       The step number of the initialization.
+     * @return The output path of the job.
+     * @throws IOException If an I/O error occurs or the job fails.
+     */
+    private static Path runStep(Configuration conf, Path inputPath, Path initPath, ArrayList<Centroid> candidates, String phase, int step) throws IOException {
+        KMeansUtil.setCentroids(conf, candidates, new Path(initPath, "candidates-" + step + ".bin"));
+        Path stepPath = new Path(initPath, "step-" + step);
+
+        try (Job job = KMeansUtil.configureInitJob(conf, inputPath, stepPath, phase, step)) {
+            if (job == null) {
+                throw new IOException("Error in Job configuration");
+            }
+            if (!job.waitForCompletion(true)) {
+                throw new IOException("Error during the initialization " + phase + " job");
+            }
+        } catch (InterruptedException | ClassNotFoundException e) {
+            throw new IOException("Error during the initialization " + phase + " job", e);
+        }
+        return stepPath;
+    }
+
+    /**
+     * Lists the part files written by a job.
+     *
+     * @param conf    The Hadoop configuration.
+     * @param dirPath The output path of the job.
+     * @return The paths of the part files.
+     * @throws IOException If an I/O error occurs.
+     */
+    private static ArrayList<Path> listParts(Configuration conf, Path dirPath) throws IOException {
+        FileSystem fs = dirPath.getFileSystem(conf);
+        ArrayList<Path> parts = new ArrayList<>();
+        for (FileStatus status : fs.listStatus(dirPath)) {
+            if (status.getPath().getName().startsWith("part-")) {
+                parts.add(status.getPath());
+            }
+        }
+        return parts;
+    }
+
+    /**
+     * Runs the stats phase over the dataset with the current candidates.
+     *
+     * @param conf       The Hadoop configuration of the initialization.
+     * @param inputPath  The path of the dataset.
+     * @param initPath   The directory of the initialization.
+     * @param candidates The current candidates.
+     * @param step       The step number of the initialization.
+     * @return The statistics of the candidates.
+     * @throws IOException If an I/O error occurs or the job fails.
+     */
+    private static Statistics computeStatistics(Configuration conf, Path inputPath, Path initPath, ArrayList<Centroid> candidates, int step) throws IOException {
+        Path stepPath = runStep(conf, inputPath, initPath, candidates, KMeansUtil.INIT_PHASE_STATS, step);
+
+        Statistics statistics = new Statistics(candidates.size());
+        IntWritable key = new IntWritable();
+        Point value = new Point();
+        for (Path part : listParts(conf, stepPath)) {
+            try (SequenceFile.Reader reader = new SequenceFile.Reader(conf, SequenceFile.Reader.file(part))) {
+                while (reader.next(key, value)) {
+                    if (!candidates.isEmpty()) {
+                        statistics.weights[key.get()] += value.getInstances();
+                    }
+                    statistics.cost += value.getCoordinates()[0];
+                    statistics.points += value.getInstances();
+                }
+            }
+        }
+        return statistics;
+    }
+
+    /**
+     * Runs the sample phase over the dataset with the current candidates.
+     *
+     * @param conf       The Hadoop configuration of the initialization.
+     * @param inputPath  The path of the dataset.
+     * @param initPath   The directory of the initialization.
+     * @param candidates The current candidates.
+     * @param sampleSize The expected number of sampled points.
+     * @param cost       The cost of the current candidates over the dataset.
+     * @param step       The step number of the initialization.
+     * @return The sampled points.
+     * @throws IOException If an I/O error occurs or the job fails.
+     */
+    private static ArrayList<Point> sample(Configuration conf, Path inputPath, Path initPath, ArrayList<Centroid> candidates,
+                                           double sampleSize, double cost, int step) throws IOException {
+        conf.setDouble(KMeansUtil.INIT_SAMPLE_SIZE_KEY, sampleSize);
+        conf.setDouble(KMeansUtil.INIT_COST_KEY, cost);
+        Path stepPath = runStep(conf, inputPath, initPath, candidates, KMeansUtil.INIT_PHASE_SAMPLE, step);
+
+        ArrayList<Point> sample = new ArrayList<>();
+        IntWritable key = new IntWritable();
+        for (Path part : listParts(conf, stepPath)) {
+            try (SequenceFile.Reader reader = new SequenceFile.Reader(conf, SequenceFile.Reader.file(part))) {
+                Point value = new Point();
+                while (reader.next(key, value)) {
+                    sample.add(value);
+                    value = new Point();
+                }
+            }
+        }
+        return sample;
+    }
+}
@@ -1,42 +1,31 @@
 package it.unipi.hadoop;
 
-import org.apache.hadoop.io.IntWritable;
-import org.apache.hadoop.io.Text;
-import org.apache.hadoop.mapreduce.Reducer;
-
-import java.io.IOException;
 import java.util.Iterator;
 
 /**
- * Reducer class for the KMeans algorithm.
- * This class calculates the new centroid points based on the partial sums of the points assigned to each centroid.
+ * Reducer class for the KMeans algorithm over dense points.
+ * The dense partial sums are added up coordinate by coordinate, then the new centroid is computed
+ * and written as described in AbstractKMeansReducer.
  */
-public class KMeansReducer extends Reducer<IntWritable, Point, IntWritable, Text> {
+public class KMeansReducer extends AbstractKMeansReducer<Point> {
 
     /**
-     * Reduce method of the Reducer class.
-     * Calculates the new centroid points by averaging the partial sums of the assigned points.
+     * Adds up the dense partial sums of a centroid.
      *
-     * @param centroidId  The ID of the centroid.
      * @param partialSums The partial sums of the points assigned to the centroid.
-     * @param context     The context object for accessing Hadoop services.
-     * @throws IOException          If an I/O error occurs.
-     * @throws InterruptedException If the execution is interrupted.
+     * @param sum         The point where the sum of the coordinates is stored.
+     * @return The number of points of the sum.
      */
     @Override
-    protected void reduce(IntWritable centroidId, Iterable<Point> partialSums, Context context) throws IOException, InterruptedException {
+    protected long sum(Iterable<Point> partialSums, Point sum) {
         final Iterator<Point> it = partialSums.iterator();
-        Point nextCentroidPoint = it.next();
+        // Copy the first partial sum: Hadoop reuses the same object for every value
+        sum.set(it.next());
 
         // Iterate over the partial sums and add every coordinate of the points
         while (it.hasNext()) {
-            nextCentroidPoint.add(it.next());
+            sum.add(it.next());
         }
-
-        // Calculate the average of the coordinates to obtain the new centroid point
-        nextCentroidPoint.average();
-
-        // Emit the centroid ID and the string representation of the new centroid point
-        context.write(centroidId, new Text(nextCentroidPoint.toString()));
+        return sum.getInstances();
     }
 }
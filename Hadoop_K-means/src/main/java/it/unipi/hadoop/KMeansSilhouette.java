@@ -0,0 +1,161 @@
+package it.unipi.hadoop;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.Job;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Evaluation of a K-means model with the simplified silhouette, computed by a MapReduce job in one pass over the dataset.
+ * The silhouette of a point is computed from the distances to its nearest and second nearest centroids, instead of
+ * the distances to all the other points, and only for a uniform sample of at most kmeans.silhouette.sample.size points,
+ * so that neither the time nor the memory grow with the square of the dataset.
+ */
+public class KMeansSilhouette {
+
+    /**
+     * Name of the summary of the evaluation in the output path.
+     */
+    private static final String SUMMARY_FILE = "_silhouette.txt";
+
+    /**
+     * Reads the centroids of a model, from the output directory of a K-means run or from a file in the same format.
+     *
+     * @param conf      The Hadoop configuration.
+     * @param modelPath The path of the model.
+     * @return The centroids of the model.
+     * @throws IOException If an I/O error occurs during the reading of the centroids.
+     */
+    private static ArrayList<Centroid> readModel(Configuration conf, Path modelPath) throws IOException {
+        FileStatus status = modelPath.getFileSystem(conf).getFileStatus(modelPath);
+        if (status.isDirectory()) {
+            return KMeansUtil.readCentroidFromMultipleFiles(conf, modelPath);
+        }
+        return KMeansUtil.readCentroids(modelPath.toString(), conf, false);
+    }
+
+    /**
+     * Writes the mean silhouette of every cluster of the sample, and of the whole sample, to the summary file
+     * of the output path, and prints the silhouette of the whole sample.
+     *
+     * @param conf       The Hadoop configuration.
+     * @param outputPath The output path of the evaluation, with the sample written by the job.
+     * @param points     The number of points of the dataset.
+     * @return The mean silhouette of the sample.
+     * @throws IOException If an I/O error occurs during the reading of the sample or the writing of the summary.
+     */
+    private static double summarize(Configuration conf, Path outputPath, long points) throws IOException {
+        FileSystem fs = outputPath.getFileSystem(conf);
+        TreeMap<Integer, double[]> clusters = new TreeMap<>();
+        double sum = 0.0;
+        long sampled = 0;
+        for (FileStatus status : fs.listStatus(outputPath)) {
+            if (!status.getPath().getName().startsWith("part-")) {
+                continue;
+            }
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(fs.open(status.getPath()), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] fields = line.split("\t");
+                    double silhouette = Double.parseDouble(fields[1]);
+                    double[] cluster = clusters.computeIfAbsent(Integer.parseInt(fields[0]), id -> new double[2]);
+                    cluster[0]++;
+                    cluster[1] += silhouette;
+                    sum += silhouette;
+                    sampled++;
+                }
+            }
+        }
+        double silhouette = sampled == 0 ? 0.0 : sum / sampled;
+
+        StringBuilder summary = new StringBuilder("cluster\tpoints\tsilhouette\n");
+        for (Map.Entry<Integer, double[]> cluster : clusters.entrySet()) {
+            double[] values = cluster.getValue();
+            summary.append(cluster.getKey()).append('\t').append((long) values[0]).append('\t').append(values[1] / values[0]).append('\n');
+        }
+        summary.append("all\t").append(sampled).append('\t').append(silhouette).append('\n');
+        try (FSDataOutputStream out = fs.create(new Path(outputPath, SUMMARY_FILE), true)) {
+            out.write(summary.toString().getBytes(StandardCharsets.UTF_8));
+        }
+
+        System.out.println("Silhouette Score: " + silhouette + " (simplified, " + sampled + " sampled points of " + points + ")");
+        return silhouette;
+    }
+
+    /**
+     * The main entry point of the silhouette evaluation.
+     *
+     * @param args The command-line arguments. Expects `inputPath` `modelPath` `outputPath` [`sampleSize`].
+     *             `modelPath` is the output directory of a K-means run, or a file in the same format.
+     *             The sampled points, with their cluster and their silhouette, are written to `outputPath`,
+     *             together with the mean silhouette of every cluster in _silhouette.txt. The silhouette of the model
+     *             is also appended to the MapReduce log file, like the Python evaluation script.
+     */
+    public static void main(String[] args) {
+        // Check if the number of arguments is valid
+        if (args.length < 3 || args.length > 4) {
+            System.err.println("Usage: KMeansSilhouette <inputPath> <modelPath> <outputPath> [<sampleSize>]");
+            System.exit(1);
+        }
+
+        Configuration conf = new Configuration();
+        Path inputPath = new Path(args[0]);
+        Path modelPath = new Path(args[1]);
+        Path outputPath = new Path(args[2]);
+        try {
+            if (args.length == 4) {
+                conf.setInt(KMeansUtil.SILHOUETTE_SAMPLE_SIZE_KEY, Integer.parseInt(args[3]));
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error during the parsing of the arguments: " + e.getMessage());
+            System.exit(1);
+        }
+
+        // Publish the centroids of the model
+        Path sideFile = KMeansUtil.getCentroidsSideFile(outputPath, 0);
+        FileSystem fs = null;
+        try {
+            fs = outputPath.getFileSystem(conf);
+            fs.delete(outputPath, true);
+            KMeansUtil.setCentroids(conf, readModel(conf, modelPath), sideFile);
+        } catch (IOException e) {
+            System.err.println("Error during the reading of the centroids: " + e.getMessage());
+            System.exit(1);
+        }
+
+        try (Job job = KMeansUtil.configureSilhouetteJob(conf, inputPath, outputPath)) {
+            if (job == null) {
+                System.err.println("Error in Job configuration");
+                System.exit(1);
+            }
+            if (!job.waitForCompletion(true)) {
+                System.err.println("Error during the silhouette evaluation");
+                System.exit(1);
+            }
+
+            double silhouette = summarize(conf, outputPath, job.getCounters().findCounter(KMeansCounter.POINTS).getValue());
+            // A BufferedWriter, unlike a PrintWriter, reports the errors of the writes and of the close
+            try (BufferedWriter out = new BufferedWriter(new FileWriter("map_reduce_log.txt", true))) {
+                out.newLine();
+                out.write("Silhouette Score: " + silhouette);
+                out.newLine();
+            }
+            fs.delete(sideFile.getParent(), true);
+        } catch (IOException | InterruptedException | ClassNotFoundException e) {
+            System.err.println("Error during the silhouette evaluation: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
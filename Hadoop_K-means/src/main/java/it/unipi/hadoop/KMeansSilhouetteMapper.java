@@ -0,0 +1,162 @@
+package it.unipi.hadoop;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.DoubleWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapreduce.Mapper;
+
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * Mapper of the silhouette evaluation, which computes the simplified silhouette of a uniform sample of the points.
+ * The simplified silhouette of a point is (b - a) / max(a, b), where a is the distance from its nearest centroid
+ * and b the distance from the second nearest one, so it costs k distances instead of a pass over all the points.
+ * Every point gets a random priority, and the task keeps the kmeans.silhouette.sample.size points with the lowest
+ * priorities: since the single reducer keeps the lowest priorities of all the tasks, the result is a uniform sample
+ * of the whole dataset. The points that cannot enter the sample are not even parsed.
+ */
+public class KMeansSilhouetteMapper extends Mapper<Object, Writable, DoubleWritable, Text> {
+
+    /**
+     * Point of the sample of the task, with its priority.
+     */
+    private static final class Sample {
+
+        private final double priority;
+        private final int clusterId;
+        private final double silhouette;
+
+        private Sample(double priority, int clusterId, double silhouette) {
+            this.priority = priority;
+            this.clusterId = clusterId;
+            this.silhouette = silhouette;
+        }
+    }
+
+    /**
+     * Centroids of the model, shared with the other tasks of the JVM through the CentroidCache.
+     */
+    private CentroidSet centroids;
+
+    /**
+     * Index used to find the nearest centroid of each point.
+     */
+    private CentroidIndex index;
+
+    /**
+     * Point reused for every input record, its coordinates are parsed in place.
+     */
+    private final Point parsedPoint = new Point();
+
+    /**
+     * Maximum number of points in the sample.
+     */
+    private int sampleSize;
+
+    /**
+     * Sample of the task, with the highest priority on top.
+     */
+    private PriorityQueue<Sample> sample;
+
+    /**
+     * Random number generator of the priorities.
+     */
+    private Random random;
+
+    /**
+     * Number of points read by the task.
+     */
+    private long points = 0;
+
+    /**
+     * Adds a data point to the sample of the task, if its priority is low enough.
+     *
+     * @param key     The input key.
+     * @param value   The input value representing the coordinates of a data point, as Text or as Point.
+     * @param context The context object of the task.
+     * @throws InterruptedException Thrown when a thread is interrupted while waiting, sleeping, or otherwise occupied.
+     * @throws IOException          Thrown when an I/O error occurs.
+     */
+    @Override
+    protected void map(final Object key, final Writable value, final Context context) throws InterruptedException, IOException {
+        // Skip the blank lines, e.g. at the end of the file
+        if (value instanceof Text && KMeansUtil.isBlankRecord((Text) value)) {
+            return;
+        }
+        points++;
+        double priority = random.nextDouble();
+        if (sample.size() == sampleSize && priority >= sample.peek().priority) {
+            return;
+        }
+
+        final Point point;
+        if (value instanceof Point) {
+            point = (Point) value;
+        } else {
+            point = parsedPoint;
+            point.set((Text) value);
+        }
+
+        // Distances from the nearest centroid and from the second nearest one
+        double[] coordinates = point.getCoordinates();
+        int nearest = index.nearest(coordinates);
+        double a = Math.sqrt(index.getSquaredDistance());
+        double b = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < centroids.size(); i++) {
+            if (i != nearest) {
+                b = Math.min(b, centroids.getDistance(i, coordinates));
+            }
+        }
+        // With a single centroid, or a point equidistant from everything, the silhouette is zero
+        double silhouette = (centroids.size() < 2 || Math.max(a, b) == 0.0) ? 0.0 : (b - a) / Math.max(a, b);
+
+        sample.add(new Sample(priority, centroids.getId(nearest), silhouette));
+        if (sample.size() > sampleSize) {
+            sample.poll();
+        }
+    }
+
+    /**
+     * Reads the centroids and the sampling settings during the setup phase.
+     *
+     * @param context The context object for accessing the configuration.
+     * @throws IOException          Thrown when an I/O error occurs.
+     * @throws InterruptedException Thrown when a thread is interrupted while waiting, sleeping, or otherwise occupied.
+     */
+    @Override
+    protected void setup(Context context) throws IOException, InterruptedException {
+        super.setup(context);
+        Configuration conf = context.getConfiguration();
+        centroids = CentroidCache.get(context.getJobID().toString(), conf);
+        index = KMeansUtil.createCentroidIndex(centroids, conf);
+        sampleSize = Math.max(1, conf.getInt(KMeansUtil.SILHOUETTE_SAMPLE_SIZE_KEY, KMeansUtil.DEFAULT_SILHOUETTE_SAMPLE_SIZE));
+        sample = new PriorityQueue<>(Comparator.comparingDouble((Sample s) -> s.priority).reversed());
+        // Every task draws a different sequence, the same one when the task is retried
+        long seed = conf.getLong(KMeansUtil.SILHOUETTE_SEED_KEY, 0L);
+        random = new Random(seed * 1000003L + context.getTaskAttemptID().getTaskID().getId());
+    }
+
+    /**
+     * Emits the sample of the task, keyed by priority, and publishes the number of points read.
+     *
+     * @param context The context object for writing the sample.
+     * @throws IOException          Thrown when an I/O error occurs.
+     * @throws InterruptedException Thrown when a thread is interrupted while waiting, sleeping, or otherwise occupied.
+     */
+    @Override
+    protected void cleanup(Context context) throws IOException, InterruptedException {
+        context.getCounter(KMeansCounter.POINTS).increment(points);
+        DoubleWritable priority = new DoubleWritable();
+        Text silhouette = new Text();
+        for (Sample s : sample) {
+            priority.set(s.priority);
+            silhouette.set(s.clusterId + "\t" + s.silhouette);
+            context.write(priority, silhouette);
+        }
+        super.cleanup(context);
+    }
+}
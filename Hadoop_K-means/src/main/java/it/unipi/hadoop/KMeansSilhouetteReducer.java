@@ -0,0 +1,59 @@
+package it.unipi.hadoop;
+
+import org.apache.hadoop.io.DoubleWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Reducer;
+
+import java.io.IOException;
+
+/**
+ * Reducer of the silhouette evaluation, run as the only reducer of the job.
+ * The samples of the tasks arrive sorted by priority, and the first kmeans.silhouette.sample.size of them are
+ * a uniform sample of the dataset. It writes one line per sampled point, with the ID of its cluster and its silhouette.
+ */
+public class KMeansSilhouetteReducer extends Reducer<DoubleWritable, Text, NullWritable, Text> {
+
+    /**
+     * Maximum number of points in the sample.
+     */
+    private int sampleSize;
+
+    /**
+     * Number of points written so far.
+     */
+    private int written = 0;
+
+    /**
+     * Reads the size of the sample during the setup phase.
+     *
+     * @param context The context object for accessing the configuration.
+     * @throws IOException          If an I/O error occurs.
+     * @throws InterruptedException If the execution is interrupted.
+     */
+    @Override
+    protected void setup(Context context) throws IOException, InterruptedException {
+        super.setup(context);
+        sampleSize = Math.max(1, context.getConfiguration().getInt(KMeansUtil.SILHOUETTE_SAMPLE_SIZE_KEY, KMeansUtil.DEFAULT_SILHOUETTE_SAMPLE_SIZE));
+    }
+
+    /**
+     * Writes the sampled points with the given priority, until the sample is full.
+     *
+     * @param priority    The priority of the points.
+     * @param silhouettes The cluster IDs and the silhouettes of the points.
+     * @param context     The context object for writing the sample.
+     * @throws IOException          If an I/O error occurs.
+     * @throws InterruptedException If the execution is interrupted.
+     */
+    @Override
+    protected void reduce(DoubleWritable priority, Iterable<Text> silhouettes, Context context) throws IOException, InterruptedException {
+        for (Text silhouette : silhouettes) {
+            if (written == sampleSize) {
+                return;
+            }
+            context.write(NullWritable.get(), silhouette);
+            written++;
+        }
+    }
+}
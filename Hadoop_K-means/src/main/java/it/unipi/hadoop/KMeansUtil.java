@@ -5,17 +5,30 @@ import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DoubleWritable;
 import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.DefaultCodec;
+import org.apache.hadoop.mapreduce.InputFormat;
 import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.MRJobConfig;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.SequenceFileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.LazyOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
 
 import java.io.*;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.stream.Collectors;
 
 /**
  * Utility class for the KMeans algorithm.
@@ -24,9 +37,210 @@ import java.util.stream.Collectors;
 public class KMeansUtil {
 
     public static final int DEFAULT_NUM_REDUCERS = 1;
+
+    /**
+     * Configuration keys of the automatic choice of the number of reducers: the bytes of partial sums
+     * to be shuffled to every reducer, and the maximum number of reducers.
+     */
+    public static final String REDUCERS_BYTES_PER_REDUCER_KEY = "kmeans.reducers.bytes.per.reducer";
+    public static final long DEFAULT_REDUCERS_BYTES_PER_REDUCER = 64L * 1024 * 1024;
+    public static final String REDUCERS_MAX_KEY = "kmeans.reducers.max";
+    public static final int DEFAULT_REDUCERS_MAX = 100;
     public static final double DEFAULT_THRESHOLD = 0.001;
     public static final int DEFAULT_MAX_ITERATIONS = 20;
 
+    /**
+     * Configuration key of the iteration number of a job.
+     */
+    public static final String ITERATION_KEY = "kmeans.iteration";
+
+    /**
+     * Configuration key of the interval, in milliseconds, between the checks of the completion of an iteration job
+     * by the driver. It replaces the Hadoop default of 5 seconds, which dominates the time of short iterations.
+     */
+    public static final String COMPLETION_POLL_INTERVAL_KEY = "kmeans.completion.poll.interval";
+    public static final int DEFAULT_COMPLETION_POLL_INTERVAL = 100;
+
+    /**
+     * Configuration key enabling the in-mapper combining of the points.
+     * When it is enabled the mapper emits one partial sum per centroid and the combiner is not used.
+     */
+    public static final String IN_MAPPER_COMBINING_KEY = "kmeans.inmapper.combining";
+    public static final boolean DEFAULT_IN_MAPPER_COMBINING = true;
+
+    /**
+     * Configuration key indicating that the input of the iterations is the SequenceFile of points
+     * written by the conversion job, instead of the CSV text.
+     */
+    public static final String BINARY_INPUT_KEY = "kmeans.input.binary";
+
+    /**
+     * Configuration key indicating that the points of the dataset are sparse, in the index:value text form
+     * of SparsePoint. The dimension of the points is the dimension of the centroids, which are dense.
+     */
+    public static final String SPARSE_INPUT_KEY = "kmeans.input.sparse";
+
+    /**
+     * Configuration key of the dimension of the points, published by the driver for the compact shuffle format.
+     */
+    public static final String DIMENSION_KEY = "kmeans.dimension";
+
+    /**
+     * Configuration key enabling the compact format of the dense points of the shuffle, see CompactPoint.
+     * The sparse points are always written in their own compact format.
+     */
+    public static final String SHUFFLE_COMPACT_KEY = "kmeans.shuffle.compact";
+    public static final boolean DEFAULT_SHUFFLE_COMPACT = false;
+
+    /**
+     * Configuration keys of the compression of the intermediate data of the iterations (the spills and the shuffle):
+     * the flag enabling it and the codec.
+     */
+    public static final String SHUFFLE_COMPRESS_KEY = "kmeans.shuffle.compress";
+    public static final boolean DEFAULT_SHUFFLE_COMPRESS = false;
+    public static final String SHUFFLE_COMPRESS_CODEC_KEY = "kmeans.shuffle.compress.codec";
+
+    /**
+     * Configuration keys of the mini-batch mode: the fraction of the dataset read by each mini-batch iteration
+     * (the mode is enabled when it is below 1), the sampling of splits or of records, the maximum number of
+     * mini-batch iterations, the shift below which the mini-batches are considered stable (the shift of a mini-batch
+     * includes the sampling noise, so it is higher than the threshold of the full iterations), the number of
+     * full iterations that polish the result, and the seed of the sampling. The fraction of the records of the sampled
+     * splits is set by SampledInputFormat, when the fraction of the dataset is not a whole number of splits.
+     */
+    public static final String MINIBATCH_FRACTION_KEY = "kmeans.minibatch.fraction";
+    public static final double DEFAULT_MINIBATCH_FRACTION = 1.0;
+    public static final String MINIBATCH_SAMPLING_KEY = "kmeans.minibatch.sampling";
+    public static final String MINIBATCH_SAMPLING_SPLITS = "splits";
+    public static final String MINIBATCH_SAMPLING_RECORDS = "records";
+    public static final String MINIBATCH_ITERATIONS_KEY = "kmeans.minibatch.iterations";
+    public static final String MINIBATCH_THRESHOLD_KEY = "kmeans.minibatch.threshold";
+    public static final double DEFAULT_MINIBATCH_THRESHOLD = 0.01;
+    public static final String MINIBATCH_POLISH_ITERATIONS_KEY = "kmeans.minibatch.polish.iterations";
+    public static final int DEFAULT_MINIBATCH_POLISH_ITERATIONS = 2;
+    public static final String MINIBATCH_SEED_KEY = "kmeans.minibatch.seed";
+    public static final String MINIBATCH_RECORD_FRACTION_KEY = "kmeans.minibatch.record.fraction";
+
+    /**
+     * Configuration keys of a mini-batch iteration: the flag marking the job as a mini-batch one, and the number of
+     * points assigned to every centroid by the previous mini-batches, used by the reducer for the learning rates.
+     */
+    public static final String MINIBATCH_ACTIVE_KEY = "kmeans.minibatch.active";
+    public static final String MINIBATCH_COUNTS_KEY = "kmeans.minibatch.counts";
+
+    /**
+     * Configuration key of the decay of an incremental run: the number of points of every centroid of the previous
+     * model is multiplied by it before the new points are folded in, so 1 weighs the old and the new points equally.
+     */
+    public static final String INCREMENTAL_DECAY_KEY = "kmeans.incremental.decay";
+    public static final double DEFAULT_INCREMENTAL_DECAY = 1.0;
+
+    /**
+     * Configuration keys of the k-means|| initialization: the phase of a job, the oversampling factor
+     * (the expected number of points sampled per round is the factor times k), the number of sampling rounds,
+     * the seed of the random sampling, and the expected number of points sampled and the cost of the candidates
+     * in the current round.
+     */
+    public static final String INIT_PHASE_KEY = "kmeans.init.phase";
+    public static final String INIT_PHASE_STATS = "stats";
+    public static final String INIT_PHASE_SAMPLE = "sample";
+    public static final String INIT_OVERSAMPLING_KEY = "kmeans.init.oversampling";
+    public static final double DEFAULT_INIT_OVERSAMPLING = 2.0;
+    public static final String INIT_ROUNDS_KEY = "kmeans.init.rounds";
+    public static final int DEFAULT_INIT_ROUNDS = 5;
+    public static final String INIT_SEED_KEY = "kmeans.init.seed";
+    public static final String INIT_SAMPLE_SIZE_KEY = "kmeans.init.sample.size";
+    public static final String INIT_COST_KEY = "kmeans.init.cost";
+
+    /**
+     * Counter group of the sizes of the clusters, with one counter per centroid ID. It is enabled by the
+     * driver through the flag key only when k is at most kmeans.metrics.cluster.counters.max, because Hadoop
+     * limits the number of counters of a job (mapreduce.job.counters.max, 120 by default).
+     */
+    public static final String CLUSTER_SIZE_GROUP = "K-Means Cluster Sizes";
+    public static final String CLUSTER_SIZE_COUNTERS_KEY = "kmeans.metrics.cluster.counters";
+    public static final String CLUSTER_SIZE_COUNTERS_MAX_KEY = "kmeans.metrics.cluster.counters.max";
+    public static final int DEFAULT_CLUSTER_SIZE_COUNTERS_MAX = 100;
+
+    /**
+     * Configuration keys of a sweep, which runs several independent models over the same scans of the dataset:
+     * the number of centroids of every model, in order, and the indices of the models that are still iterating.
+     * The centroids of the models are numbered one model after the other, so that the ID of a centroid encodes
+     * the pair of model and centroid, and the partitioner, the reducers and the updates work on it unchanged.
+     * The SSE of every model is written by the map tasks in their SSE files, in order of model index.
+     */
+    public static final String SWEEP_MODELS_KEY = "kmeans.sweep.models";
+    public static final String SWEEP_ACTIVE_KEY = "kmeans.sweep.active";
+
+    /**
+     * Configuration keys of the silhouette evaluation: the maximum number of points of the sample,
+     * and the seed of the sampling.
+     */
+    public static final String SILHOUETTE_SAMPLE_SIZE_KEY = "kmeans.silhouette.sample.size";
+    public static final int DEFAULT_SILHOUETTE_SAMPLE_SIZE = 100000;
+    public static final String SILHOUETTE_SEED_KEY = "kmeans.silhouette.seed";
+
+    /**
+     * Configuration key of the local file where the driver appends the metrics of every iteration,
+     * as CSV if the name ends with .csv, otherwise as one JSON object per line.
+     */
+    public static final String REPORT_PATH_KEY = "kmeans.report.path";
+    public static final String DEFAULT_REPORT_PATH = "kmeans_report.json";
+
+    /**
+     * Configuration key of the strategy used to assign the points to the nearest centroid:
+     * "linear" compares each point with every centroid, "pruned" skips the centroids excluded by the
+     * triangle inequality, "kdtree" searches a k-d tree of the centroids, "auto" chooses "kdtree" when there are
+     * at most kmeans.assignment.kdtree.max.d dimensions and at least kmeans.assignment.kdtree.min.k centroids,
+     * otherwise "pruned" when there are at least kmeans.assignment.pruned.min.k centroids.
+     */
+    public static final String ASSIGNMENT_KEY = "kmeans.assignment";
+    public static final String DEFAULT_ASSIGNMENT = "auto";
+
+    /**
+     * Configuration key of the minimum number of centroids for which the automatic assignment uses the pruned index.
+     */
+    public static final String PRUNED_MIN_CENTROIDS_KEY = "kmeans.assignment.pruned.min.k";
+    public static final int DEFAULT_PRUNED_MIN_CENTROIDS = 32;
+
+    /**
+     * Maximum number of centroids for which the automatic assignment uses the pruned index,
+     * since it stores the distances between all the pairs of centroids: 4 MB per index, and per model in a sweep.
+     */
+    public static final int PRUNED_MAX_CENTROIDS = 1024;
+
+    /**
+     * Configuration keys of the maximum dimension and of the minimum number of centroids for which the automatic
+     * assignment uses the k-d tree: with more dimensions a query visits most of the leaves anyway.
+     */
+    public static final String KDTREE_MAX_DIMENSION_KEY = "kmeans.assignment.kdtree.max.d";
+    public static final int DEFAULT_KDTREE_MAX_DIMENSION = 4;
+    public static final String KDTREE_MIN_CENTROIDS_KEY = "kmeans.assignment.kdtree.min.k";
+    public static final int DEFAULT_KDTREE_MIN_CENTROIDS = 256;
+
+    /**
+     * Configuration key of the centroids stored as strings in the configuration.
+     */
+    public static final String CENTROIDS_KEY = "centroids";
+
+    /**
+     * Configuration key of the path of the binary side file containing the centroids.
+     * When it is set, the file is shipped to the tasks through the distributed cache.
+     */
+    public static final String CENTROIDS_FILE_KEY = "kmeans.centroids.file";
+
+    /**
+     * Name of the link to the centroids side file in the working directory of the tasks.
+     */
+    public static final String CENTROIDS_CACHE_LINK = "centroids.bin";
+
+    /**
+     * Configuration key of the maximum number of values (k x d) stored in the configuration.
+     * Bigger models are distributed through the binary side file.
+     */
+    public static final String MAX_CONF_CENTROID_VALUES_KEY = "kmeans.centroids.conf.max.values";
+    public static final int DEFAULT_MAX_CONF_CENTROID_VALUES = 4096;
+
     /**
      * Generates a Centroid object from an array of strings.
      *
@@ -40,10 +254,9 @@ public class KMeansUtil {
         int centroidId = (int) Double.parseDouble(fields[0]);
         centroid.getCentroid_id().set(centroidId);
         
-        ArrayList<Double> coords = new ArrayList<>();
+        double[] coords = new double[fields.length - 1];
         for (int i = 1; i < fields.length; i++) {
-            double value = Double.parseDouble(fields[i]);
-            coords.add(value);
+            coords[i - 1] = Double.parseDouble(fields[i]);
         }
         Point point = new Point(coords);
         centroid.setPoint(point);
@@ -65,6 +278,10 @@ public class KMeansUtil {
         FileStatus[] fileStatus = fs.listStatus(dirPath);
         for (FileStatus status : fileStatus) {
             Path filePath = status.getPath();
+            // Skip the markers, the side outputs and the empty outputs of the reducers
+            if (!filePath.getName().startsWith("part-") || status.getLen() == 0) {
+                continue;
+            }
 
             BufferedReader br = new BufferedReader(new InputStreamReader(fs.open(filePath)));
             String line;
@@ -114,28 +331,261 @@ public class KMeansUtil {
     }
 
     /**
-     * Configures a MapReduce job for K-Means iteration.
+     * Creates the template of the configuration of the K-Means iteration jobs.
+     * The template holds the settings that do not change between the iterations (classes, input, number
+     * of reducers, format and compression of the shuffle), so that every iteration only copies it and sets its own centroids and output path.
+     * The driver publishes the centroids and the state of the mini-batches of every iteration in the template.
      *
      * @param conf        The Hadoop configuration.
-     * @param inputPath   The input path for the MapReduce job.
-     * @param outputPath  The output path for the MapReduce job.
-     * @param numReducers The number of reducers for the MapReduce job.
-     * @param iteration   The current iteration number.
-     * @return The configured MapReduce job.
+     * @param inputPath   The input path for the MapReduce jobs.
+     * @param numReducers The number of reducers for the MapReduce jobs.
+     * @return The template of the configuration.
      */
-    public static Job configureJob(Configuration conf, Path inputPath, Path outputPath, int numReducers, int iteration) {
+    public static Configuration createJobTemplate(Configuration conf, Path inputPath, int numReducers) {
         Job job;
         try {
-            job = Job.getInstance(conf, "K-Means Iteration " + iteration);
+            job = Job.getInstance(conf);
             job.setJarByClass(KMeans.class);
-            job.setMapperClass(KMeansMapper.class);
-            job.setCombinerClass(KMeansCombiner.class);
+            boolean sparse = conf.getBoolean(SPARSE_INPUT_KEY, false);
+            job.setMapperClass(sparse ? SparseKMeansMapper.class : KMeansMapper.class);
+            // The combiner is redundant when the mapper already emits one partial sum per centroid
+            if (!conf.getBoolean(IN_MAPPER_COMBINING_KEY, DEFAULT_IN_MAPPER_COMBINING)) {
+                job.setCombinerClass(sparse ? SparseKMeansCombiner.class : KMeansCombiner.class);
+            }
             job.setMapOutputKeyClass(IntWritable.class);
-            job.setMapOutputValueClass(Point.class);
+            job.setMapOutputValueClass(sparse ? SparsePoint.class : createPoint(conf).getClass());
             job.setNumReduceTasks(numReducers);
-            job.setReducerClass(KMeansReducer.class);
+            job.setReducerClass(sparse ? SparseKMeansReducer.class : KMeansReducer.class);
             job.setOutputKeyClass(IntWritable.class);
             job.setOutputValueClass(Text.class);
+            // Reducers without centroids do not create empty part files
+            LazyOutputFormat.setOutputFormatClass(job, TextOutputFormat.class);
+            configureInput(job, conf, inputPath);
+            configureShuffle(job, conf);
+            job.getConfiguration().setInt(Job.COMPLETION_POLL_INTERVAL_KEY,
+                    conf.getInt(COMPLETION_POLL_INTERVAL_KEY, DEFAULT_COMPLETION_POLL_INTERVAL));
+
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+
+        return job.getConfiguration();
+    }
+
+    /**
+     * Configures a MapReduce job for K-Means iteration from the template of the configuration.
+     *
+     * @param template   The template of the configuration, created by createJobTemplate.
+     * @param outputPath The output path for the MapReduce job.
+     * @param iteration  The current iteration number.
+     * @return The configured MapReduce job.
+     */
+    public static Job configureJob(Configuration template, Path outputPath, int iteration) {
+        Job job;
+        try {
+            job = Job.getInstance(template, "K-Means Iteration " + iteration);
+            job.getConfiguration().setInt(ITERATION_KEY, iteration);
+            configureCentroids(job, template);
+            FileOutputFormat.setOutputPath(job, outputPath);
+
+            if (template.getBoolean(MINIBATCH_ACTIVE_KEY, false) && template.getDouble(MINIBATCH_FRACTION_KEY, DEFAULT_MINIBATCH_FRACTION) < 1.0) {
+                // Read only a sample of the splits, unless the mapper samples the records
+                if (!MINIBATCH_SAMPLING_RECORDS.equals(template.get(MINIBATCH_SAMPLING_KEY, MINIBATCH_SAMPLING_SPLITS))) {
+                    job.getConfiguration().setClass(SampledInputFormat.DELEGATE_KEY, job.getInputFormatClass(), InputFormat.class);
+                    job.setInputFormatClass(SampledInputFormat.class);
+                }
+            }
+
+        } catch (IOException | URISyntaxException | ClassNotFoundException e) {
+            e.printStackTrace();
+            return null;
+        }
+
+        return job;
+    }
+
+    /**
+     * Configures the compression of the intermediate data of a job from the kmeans.shuffle.compress settings.
+     * Without a codec the Hadoop default one is used.
+     *
+     * @param job  The MapReduce job.
+     * @param conf The Hadoop configuration.
+     */
+    private static void configureShuffle(Job job, Configuration conf) {
+        boolean compress = conf.getBoolean(SHUFFLE_COMPRESS_KEY, DEFAULT_SHUFFLE_COMPRESS);
+        job.getConfiguration().setBoolean(MRJobConfig.MAP_OUTPUT_COMPRESS, compress);
+        if (compress && conf.get(SHUFFLE_COMPRESS_CODEC_KEY) != null) {
+            job.getConfiguration().setClass(MRJobConfig.MAP_OUTPUT_COMPRESS_CODEC,
+                    conf.getClass(SHUFFLE_COMPRESS_CODEC_KEY, DefaultCodec.class, CompressionCodec.class), CompressionCodec.class);
+        }
+    }
+
+    /**
+     * Chooses the number of reducers of the iterations from the number of centroids and the size of the input.
+     * Every map task emits at most one partial sum per centroid, so the shuffled bytes are estimated as the number
+     * of splits of the input times the size of k partial sums, and there is one reducer every
+     * kmeans.reducers.bytes.per.reducer bytes. The reducers are never more than the centroids,
+     * since a reducer without centroids has nothing to do.
+     *
+     * @param conf      The Hadoop configuration.
+     * @param inputPath The input path of the iterations.
+     * @param k         The number of centroids.
+     * @param dimension The dimension of the points.
+     * @return The number of reducers.
+     * @throws IOException If the size of the input cannot be read.
+     */
+    public static int chooseNumReducers(Configuration conf, Path inputPath, int k, int dimension) throws IOException {
+        FileSystem fs = inputPath.getFileSystem(conf);
+        long inputBytes = fs.getContentSummary(inputPath).getLength();
+        long splitBytes = Math.max(1, Math.min(conf.getLong(FileInputFormat.SPLIT_MAXSIZE, Long.MAX_VALUE), fs.getDefaultBlockSize(inputPath)));
+        long splits = Math.max(1, (inputBytes + splitBytes - 1) / splitBytes);
+
+        // A partial sum is the ID, the number of points and the coordinates
+        long shuffleBytes = splits * k * (2L + dimension) * Double.BYTES;
+        long bytesPerReducer = Math.max(1, conf.getLong(REDUCERS_BYTES_PER_REDUCER_KEY, DEFAULT_REDUCERS_BYTES_PER_REDUCER));
+        long numReducers = (shuffleBytes + bytesPerReducer - 1) / bytesPerReducer;
+        return (int) Math.max(1, Math.min(numReducers, Math.min(k, conf.getInt(REDUCERS_MAX_KEY, DEFAULT_REDUCERS_MAX))));
+    }
+
+    /**
+     * Publishes the number of points assigned to every centroid by the previous mini-batches.
+     *
+     * @param conf   The Hadoop configuration.
+     * @param counts The counts of the centroids, in order of ID.
+     */
+    public static void setMiniBatchCounts(Configuration conf, long[] counts) {
+        conf.setStrings(MINIBATCH_COUNTS_KEY, Arrays.stream(counts).mapToObj(Long::toString).toArray(String[]::new));
+    }
+
+    /**
+     * Returns the fraction of its records that a mapper uses: kmeans.minibatch.fraction in a mini-batch iteration
+     * that samples the records, the rest of the fraction in one that samples the splits, 1 otherwise.
+     *
+     * @param conf The Hadoop configuration of the task.
+     * @return The probability with which each record is used.
+     */
+    public static double getRecordSamplingFraction(Configuration conf) {
+        double fraction = conf.getDouble(MINIBATCH_FRACTION_KEY, DEFAULT_MINIBATCH_FRACTION);
+        if (!conf.getBoolean(MINIBATCH_ACTIVE_KEY, false) || fraction >= 1.0) {
+            return 1.0;
+        }
+        if (MINIBATCH_SAMPLING_RECORDS.equals(conf.get(MINIBATCH_SAMPLING_KEY))) {
+            return fraction;
+        }
+        return conf.getDouble(MINIBATCH_RECORD_FRACTION_KEY, 1.0);
+    }
+
+    /**
+     * Reads the number of points assigned to every centroid by the previous mini-batches.
+     *
+     * @param conf The Hadoop configuration.
+     * @param k    The number of centroids.
+     * @return The counts of the centroids, in order of ID, zero when they are not set.
+     */
+    public static long[] getMiniBatchCounts(Configuration conf, int k) {
+        long[] counts = new long[k];
+        String[] values = conf.getTrimmedStrings(MINIBATCH_COUNTS_KEY);
+        for (int i = 0; i < Math.min(k, values.length); i++) {
+            counts[i] = Long.parseLong(values[i]);
+        }
+        return counts;
+    }
+
+    /**
+     * Configures the distribution of the centroids to the tasks of a job.
+     *
+     * @param job  The MapReduce job.
+     * @param conf The Hadoop configuration.
+     * @throws URISyntaxException If the path of the centroids side file is not valid.
+     */
+    private static void configureCentroids(Job job, Configuration conf) throws URISyntaxException {
+        // Ship the centroids side file to the tasks, if the model is too big for the configuration
+        String centroidsFile = conf.get(CENTROIDS_FILE_KEY);
+        if (centroidsFile != null) {
+            job.addCacheFile(new URI(centroidsFile + "#" + CENTROIDS_CACHE_LINK));
+        }
+    }
+
+    /**
+     * Configures the input of a job that reads the dataset.
+     *
+     * @param job       The MapReduce job.
+     * @param conf      The Hadoop configuration.
+     * @param inputPath The input path for the MapReduce job.
+     * @throws IOException If an I/O error occurs.
+     */
+    private static void configureInput(Job job, Configuration conf, Path inputPath) throws IOException {
+        if (conf.getBoolean(BINARY_INPUT_KEY, false)) {
+            job.setInputFormatClass(SequenceFileInputFormat.class);
+        }
+        FileInputFormat.addInputPath(job, inputPath);
+    }
+
+    /**
+     * Configures a MapReduce job of the k-means|| initialization.
+     * The "stats" phase computes, for every candidate, the number of points nearest to it and the sum of their
+     * squared distances, with a single reducer. The "sample" phase is map-only and samples the points
+     * with probability proportional to their squared distance from the candidates.
+     *
+     * @param conf       The Hadoop configuration.
+     * @param inputPath  The input path for the MapReduce job.
+     * @param outputPath The output path for the MapReduce job.
+     * @param phase      The phase of the initialization, "stats" or "sample".
+     * @param step       The step number of the initialization.
+     * @return The configured MapReduce job.
+     */
+    public static Job configureInitJob(Configuration conf, Path inputPath, Path outputPath, String phase, int step) {
+        Job job;
+        try {
+            job = Job.getInstance(conf, "K-Means|| Initialization " + phase + " " + step);
+            job.getConfiguration().set(INIT_PHASE_KEY, phase);
+            job.getConfiguration().setInt(ITERATION_KEY, step);
+            job.setJarByClass(KMeans.class);
+            job.setMapperClass(KMeansInitMapper.class);
+            job.setMapOutputKeyClass(IntWritable.class);
+            job.setMapOutputValueClass(Point.class);
+            if (INIT_PHASE_SAMPLE.equals(phase)) {
+                job.setNumReduceTasks(0);
+            } else {
+                // The statistics of the candidates are summed like partial sums
+                job.setNumReduceTasks(1);
+                job.setReducerClass(KMeansCombiner.class);
+            }
+            job.setOutputKeyClass(IntWritable.class);
+            job.setOutputValueClass(Point.class);
+            job.setOutputFormatClass(SequenceFileOutputFormat.class);
+            configureCentroids(job, conf);
+            configureInput(job, conf, inputPath);
+            FileOutputFormat.setOutputPath(job, outputPath);
+
+        } catch (IOException | URISyntaxException e) {
+            e.printStackTrace();
+            return null;
+        }
+
+        return job;
+    }
+
+    /**
+     * Configures the map-only job that converts the CSV dataset into a SequenceFile of points,
+     * or the sparse dataset into a SequenceFile of sparse points.
+     *
+     * @param conf       The Hadoop configuration.
+     * @param inputPath  The path of the CSV dataset.
+     * @param outputPath The path of the binary dataset.
+     * @return The configured MapReduce job.
+     */
+    public static Job configureConversionJob(Configuration conf, Path inputPath, Path outputPath) {
+        Job job;
+        try {
+            job = Job.getInstance(conf, "K-Means Input Conversion");
+            job.setJarByClass(KMeans.class);
+            job.setMapperClass(KMeansConversionMapper.class);
+            job.setNumReduceTasks(0);
+            job.setOutputKeyClass(NullWritable.class);
+            job.setOutputValueClass(conf.getBoolean(SPARSE_INPUT_KEY, false) ? SparsePoint.class : Point.class);
+            job.setOutputFormatClass(SequenceFileOutputFormat.class);
             FileInputFormat.addInputPath(job, inputPath);
             FileOutputFormat.setOutputPath(job, outputPath);
 
@@ -147,6 +597,108 @@ public class KMeansUtil {
         return job;
     }
 
+    /**
+     * Configures the map-only labeling pass, which writes the ID of the nearest final centroid and the distance
+     * from it of every point to a SequenceFile keyed by the byte offset of the point in its input file, with an index
+     * of the input file of every output file. It always reads the text dataset, since the binary points do not keep
+     * their offsets.
+     *
+     * @param conf       The Hadoop configuration, with the final centroids.
+     * @param inputPath  The path of the text dataset.
+     * @param outputPath The output path of the labels.
+     * @return The configured MapReduce job.
+     */
+    public static Job configureLabelJob(Configuration conf, Path inputPath, Path outputPath) {
+        Job job;
+        try {
+            job = Job.getInstance(conf, "K-Means Labeling");
+            job.setJarByClass(KMeans.class);
+            job.setMapperClass(KMeansLabelMapper.class);
+            job.setNumReduceTasks(0);
+            job.setInputFormatClass(TextInputFormat.class);
+            job.setOutputKeyClass(LongWritable.class);
+            job.setOutputValueClass(ClusterAssignment.class);
+            job.setOutputFormatClass(SequenceFileOutputFormat.class);
+            configureCentroids(job, conf);
+            FileInputFormat.addInputPath(job, inputPath);
+            FileOutputFormat.setOutputPath(job, outputPath);
+
+        } catch (IOException | URISyntaxException e) {
+            e.printStackTrace();
+            return null;
+        }
+
+        return job;
+    }
+
+    /**
+     * Configures the silhouette evaluation job, which writes the simplified silhouette of a uniform sample of the points,
+     * with a single reducer that merges the samples of the mappers.
+     *
+     * @param conf       The Hadoop configuration, with the centroids of the model.
+     * @param inputPath  The path of the dataset.
+     * @param outputPath The output path of the sample.
+     * @return The configured MapReduce job.
+     */
+    public static Job configureSilhouetteJob(Configuration conf, Path inputPath, Path outputPath) {
+        Job job;
+        try {
+            job = Job.getInstance(conf, "K-Means Silhouette");
+            job.setJarByClass(KMeans.class);
+            job.setMapperClass(KMeansSilhouetteMapper.class);
+            job.setMapOutputKeyClass(DoubleWritable.class);
+            job.setMapOutputValueClass(Text.class);
+            job.setReducerClass(KMeansSilhouetteReducer.class);
+            job.setNumReduceTasks(1);
+            job.setOutputKeyClass(NullWritable.class);
+            job.setOutputValueClass(Text.class);
+            configureCentroids(job, conf);
+            configureInput(job, conf, inputPath);
+            FileOutputFormat.setOutputPath(job, outputPath);
+
+        } catch (IOException | URISyntaxException e) {
+            e.printStackTrace();
+            return null;
+        }
+
+        return job;
+    }
+
+    /**
+     * Returns the output path of an iteration.
+     * Every iteration writes to its own directory next to the output path, so that no directory is deleted
+     * and created again between the iterations, and the output of the last iteration is moved to the output path.
+     *
+     * @param outputPath The output path of the job.
+     * @param iteration  The iteration number.
+     * @return The output path of the iteration.
+     */
+    public static Path getIterationOutputPath(Path outputPath, int iteration) {
+        return outputPath.suffix("_iterations/iteration-" + iteration);
+    }
+
+    /**
+     * Returns the path of the binary dataset written by the conversion job.
+     * It is stored next to the output path.
+     *
+     * @param outputPath The output path of the job.
+     * @return The path of the binary dataset.
+     */
+    public static Path getBinaryInputPath(Path outputPath) {
+        return outputPath.suffix("_points");
+    }
+
+    /**
+     * Returns the path of the labels written by the labeling pass.
+     * It is stored next to the output path.
+     *
+     * @param outputPath The output path of the job.
+     * @return The path of the labels.
+     */
+    public static Path getLabelsPath(Path outputPath) {
+        return outputPath.suffix("_labels");
+    }
+
     /**
      * Reads centroids from the Hadoop configuration.
      *
@@ -159,13 +711,18 @@ public class KMeansUtil {
         ArrayList<Centroid> centroids = new ArrayList<>();
         
         // Get the string representations of the centroids from the configuration object
-        String[] centroidStrings = conf.getStrings("centroids");
+        String[] centroidStrings = conf.getStrings(CENTROIDS_KEY);
+        if (centroidStrings == null) {
+            return centroids;
+        }
         // Iterate over all centroid strings
         for (int i = 0; i < centroidStrings.length; i++) {
-            // Convert the string representation of the centroid to a list of doubles
-            ArrayList<Double> coordinates = Arrays.stream(centroidStrings[i].split(" "))
-                    .map(Double::parseDouble)
-                    .collect(Collectors.toCollection(ArrayList::new));
+            // Convert the string representation of the centroid to an array of doubles
+            String[] fields = centroidStrings[i].split(" ");
+            double[] coordinates = new double[fields.length];
+            for (int j = 0; j < fields.length; j++) {
+                coordinates[j] = Double.parseDouble(fields[j]);
+            }
             // Create a new Centroid object and add it to the list
             centroids.add(new Centroid(i, coordinates));
         }
@@ -173,17 +730,220 @@ public class KMeansUtil {
         return centroids;
     }
 
+    /**
+     * Writes the centroids to a compact binary file.
+     * The file contains the number of centroids and their dimension, followed by the coordinates
+     * of every centroid in order of ID.
+     *
+     * @param conf      The Hadoop configuration.
+     * @param centroids The centroids to be written.
+     * @param path      The path of the file.
+     * @throws IOException If an I/O error occurs during file writing.
+     */
+    public static void writeCentroidsFile(Configuration conf, ArrayList<Centroid> centroids, Path path) throws IOException {
+        FileSystem fs = path.getFileSystem(conf);
+        int dimension = centroids.isEmpty() ? 0 : centroids.get(0).getPoint().getDimension();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fs.create(path, true)))) {
+            out.writeInt(centroids.size());
+            out.writeInt(dimension);
+            for (Centroid centroid : centroids) {
+                for (double coordinate : centroid.getPoint().getCoordinates()) {
+                    out.writeDouble(coordinate);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the centroids from a binary stream written by writeCentroidsFile.
+     *
+     * @param in The input stream, it is closed at the end of the reading.
+     * @return An ArrayList of Centroid objects read from the stream.
+     * @throws IOException If an I/O error occurs during the reading.
+     */
+    public static ArrayList<Centroid> readCentroidsFile(InputStream in) throws IOException {
+        try (DataInputStream data = new DataInputStream(new BufferedInputStream(in))) {
+            int k = data.readInt();
+            int dimension = data.readInt();
+            ArrayList<Centroid> centroids = new ArrayList<>(k);
+            for (int i = 0; i < k; i++) {
+                double[] coordinates = new double[dimension];
+                for (int j = 0; j < dimension; j++) {
+                    coordinates[j] = data.readDouble();
+                }
+                centroids.add(new Centroid(i, coordinates));
+            }
+            return centroids;
+        }
+    }
+
+    /**
+     * Reads the centroids from a local binary file written by writeCentroidsFile, through memory mapping.
+     *
+     * @param file The local file.
+     * @return An ArrayList of Centroid objects read from the file.
+     * @throws IOException If an I/O error occurs during the reading.
+     */
+    public static ArrayList<Centroid> readCentroidsFile(File file) throws IOException {
+        try (MappedPointReader reader = new MappedPointReader(file, MappedPointReader.Layout.BINARY, ',')) {
+            ArrayList<Centroid> centroids = new ArrayList<>((int) reader.getCount());
+            Point point = new Point();
+            while (reader.next(point)) {
+                centroids.add(new Centroid(centroids.size(), point.getCoordinates().clone()));
+            }
+            return centroids;
+        }
+    }
+
+    /**
+     * Loads the centroids of the current iteration.
+     * They are read from the binary side file when the model has been distributed through it,
+     * otherwise from the strings in the configuration.
+     *
+     * @param conf      The Hadoop configuration.
+     * @param fromCache Flag indicating whether the side file should be read from the distributed cache link,
+     *                  it is true in the tasks and false in the driver.
+     * @return An ArrayList of Centroid objects.
+     * @throws IOException If an I/O error occurs during the reading of the side file.
+     */
+    public static ArrayList<Centroid> loadCentroids(Configuration conf, boolean fromCache) throws IOException {
+        String centroidsFile = conf.get(CENTROIDS_FILE_KEY);
+        if (centroidsFile == null) {
+            return readCentroidsFromConfiguration(conf);
+        }
+
+        // The distributed cache localizes the file in the working directory of the task
+        File localLink = new File(CENTROIDS_CACHE_LINK);
+        if (fromCache && localLink.exists()) {
+            return readCentroidsFile(localLink);
+        }
+        Path path = new Path(centroidsFile);
+        return readCentroidsFile(path.getFileSystem(conf).open(path));
+    }
+
+    /**
+     * Returns the path of the centroids side file of an iteration.
+     * The side files are stored in a directory next to the output path.
+     *
+     * @param outputPath The output path of the job.
+     * @param iteration  The iteration number.
+     * @return The path of the side file.
+     */
+    public static Path getCentroidsSideFile(Path outputPath, int iteration) {
+        return outputPath.suffix("_centroids/iteration-" + iteration + ".bin");
+    }
+
+    /**
+     * Publishes the centroids of the next iteration to the tasks.
+     * Small models are stored as strings in the configuration, while models with more than
+     * kmeans.centroids.conf.max.values values are written to a binary side file that is shipped
+     * through the distributed cache.
+     *
+     * @param conf      The Hadoop configuration.
+     * @param centroids The centroids to be published.
+     * @param sideFile  The path of the side file used for big models.
+     * @throws IOException If an I/O error occurs during the writing of the side file.
+     */
+    public static void setCentroids(Configuration conf, ArrayList<Centroid> centroids, Path sideFile) throws IOException {
+        int dimension = centroids.isEmpty() ? 0 : centroids.get(0).getPoint().getDimension();
+        long values = (long) centroids.size() * dimension;
+
+        if (values <= conf.getInt(MAX_CONF_CENTROID_VALUES_KEY, DEFAULT_MAX_CONF_CENTROID_VALUES)) {
+            setCentroidsToConf(CENTROIDS_KEY, centroids, conf);
+            conf.unset(CENTROIDS_FILE_KEY);
+        } else {
+            writeCentroidsFile(conf, centroids, sideFile);
+            conf.set(CENTROIDS_FILE_KEY, sideFile.getFileSystem(conf).makeQualified(sideFile).toString());
+            conf.unset(CENTROIDS_KEY);
+        }
+    }
+
+    /**
+     * Checks whether a text record has no point, i.e. it is empty or made only of blanks,
+     * e.g. the last line of a file or a line with a carriage return alone.
+     *
+     * @param record The text record.
+     * @return True if the record contains only spaces, tabs and line terminators.
+     */
+    public static boolean isBlankRecord(Text record) {
+        byte[] bytes = record.getBytes();
+        for (int i = 0; i < record.getLength(); i++) {
+            if (bytes[i] != ' ' && bytes[i] != '\t' && bytes[i] != '\r' && bytes[i] != '\n') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Creates an empty point in the format of the shuffle, according to the kmeans.shuffle.compact setting.
+     *
+     * @param conf The Hadoop configuration.
+     * @return A CompactPoint configured with the dimension of the job, or a Point.
+     */
+    public static Point createPoint(Configuration conf) {
+        if (conf.getBoolean(SHUFFLE_COMPACT_KEY, DEFAULT_SHUFFLE_COMPACT)) {
+            CompactPoint point = new CompactPoint();
+            point.setConf(conf);
+            return point;
+        }
+        return new Point();
+    }
+
+    /**
+     * Creates the index used to assign the points to the nearest centroid, according to the kmeans.assignment setting.
+     *
+     * @param centroids The centroids of the index.
+     * @param conf      The Hadoop configuration.
+     * @return The CentroidIndex to be used by a task.
+     * @throws IllegalArgumentException If the assignment strategy is unknown.
+     */
+    public static CentroidIndex createCentroidIndex(CentroidSet centroids, Configuration conf) throws IllegalArgumentException {
+        String assignment = conf.get(ASSIGNMENT_KEY, DEFAULT_ASSIGNMENT);
+        switch (assignment) {
+            case "linear":
+                return new LinearCentroidIndex(centroids);
+            case "pruned":
+                return new PrunedCentroidIndex(centroids);
+            case "kdtree":
+                return new KdTreeCentroidIndex(centroids);
+            case "auto":
+                int k = centroids.size();
+                if (centroids.getDimension() <= conf.getInt(KDTREE_MAX_DIMENSION_KEY, DEFAULT_KDTREE_MAX_DIMENSION)
+                        && k >= conf.getInt(KDTREE_MIN_CENTROIDS_KEY, DEFAULT_KDTREE_MIN_CENTROIDS)) {
+                    return new KdTreeCentroidIndex(centroids);
+                }
+                if (k >= conf.getInt(PRUNED_MIN_CENTROIDS_KEY, DEFAULT_PRUNED_MIN_CENTROIDS) && k <= PRUNED_MAX_CENTROIDS) {
+                    return new PrunedCentroidIndex(centroids);
+                }
+                return new LinearCentroidIndex(centroids);
+            default:
+                throw new IllegalArgumentException("Unknown assignment strategy: " + assignment);
+        }
+    }
+
     /**
      * Calculates the shift of centroids between current and previous iterations.
      *
      * @param currentCentroids The centroids of the current iteration.
      * @param conf             The Hadoop configuration.
      * @return The calculated centroid shift.
+     * @throws IOException If an I/O error occurs during the reading of the centroids side file.
      */
-    public static double calculateCentroidShift(ArrayList<Centroid> currentCentroids, Configuration conf) {
+    public static double calculateCentroidShift(ArrayList<Centroid> currentCentroids, Configuration conf) throws IOException {
         
-        // Read previous centroids from the configuration object
-        ArrayList<Centroid> previousCentroids = readCentroidsFromConfiguration(conf);
+        // Read previous centroids from the configuration object or from the side file
+        return calculateCentroidShift(currentCentroids, loadCentroids(conf, false));
+    }
+
+    /**
+     * Calculates the shift of centroids between current and previous iterations.
+     *
+     * @param currentCentroids  The centroids of the current iteration.
+     * @param previousCentroids The centroids of the previous iteration.
+     * @return The calculated centroid shift.
+     */
+    public static double calculateCentroidShift(ArrayList<Centroid> currentCentroids, ArrayList<Centroid> previousCentroids) {
         
         // Initialize the variable to store the total shift of all centroids
         double shift = 0.0;
@@ -191,17 +951,36 @@ public class KMeansUtil {
         // Iterate over all centroids
         for (int i = 0; i < previousCentroids.size(); i++) {
             // Get the coordinates of the previous and current centroid
-            ArrayList<Double> previousCentroidCoord = previousCentroids.get(i).getPoint().getCoordinates();
-            ArrayList<Double> currentCentroidCoord = currentCentroids.get(i).getPoint().getCoordinates();
+            double[] previousCentroidCoord = previousCentroids.get(i).getPoint().getCoordinates();
+            double[] currentCentroidCoord = currentCentroids.get(i).getPoint().getCoordinates();
             // Calculate the shift for each dimension and add it to the total shift
-            for (int j = 0; j < previousCentroidCoord.size(); j++) {
-                shift += Math.abs(currentCentroidCoord.get(j) - previousCentroidCoord.get(j));
+            for (int j = 0; j < previousCentroidCoord.length; j++) {
+                shift += Math.abs(currentCentroidCoord[j] - previousCentroidCoord[j]);
             }
         }
         // Return the total shift of all centroids
         return shift;
     }
 
+    /**
+     * Calculates the shift of every model of a sweep between current and previous iterations.
+     *
+     * @param currentCentroids  The centroids of the current iteration, of all the models.
+     * @param previousCentroids The centroids of the previous iteration, of all the models.
+     * @param modelSizes        The number of centroids of every model, in order.
+     * @return The shift of every model.
+     */
+    public static double[] calculateModelShifts(ArrayList<Centroid> currentCentroids, ArrayList<Centroid> previousCentroids, int[] modelSizes) {
+        double[] shifts = new double[modelSizes.length];
+        int offset = 0;
+        for (int m = 0; m < modelSizes.length; m++) {
+            shifts[m] = calculateCentroidShift(new ArrayList<>(currentCentroids.subList(offset, offset + modelSizes[m])),
+                    new ArrayList<>(previousCentroids.subList(offset, offset + modelSizes[m])));
+            offset += modelSizes[m];
+        }
+        return shifts;
+    }
+
     /**
      * Sets the centroids to the Hadoop configuration.
      *
@@ -217,6 +996,47 @@ public class KMeansUtil {
                 .toArray(String[]::new));
     }
 
+    /**
+     * Writes the centroids to a text file, in the same format of the output of the reducers.
+     *
+     * @param conf      The Hadoop configuration.
+     * @param centroids The centroids to be written.
+     * @param path      The path of the file.
+     * @throws IOException If an I/O error occurs during file writing.
+     */
+    public static void writeCentroids(Configuration conf, ArrayList<Centroid> centroids, Path path) throws IOException {
+        writeCentroids(conf, centroids, path, false);
+    }
+
+    /**
+     * Writes the centroids to a text file, either in the format of the output of the reducers
+     * or in the CSV format of the initial centroids read by readCentroids.
+     *
+     * @param conf       The Hadoop configuration.
+     * @param centroids  The centroids to be written.
+     * @param path       The path of the file.
+     * @param csvWriting Flag indicating whether the file is written in CSV format.
+     * @throws IOException If an I/O error occurs during file writing.
+     */
+    public static void writeCentroids(Configuration conf, ArrayList<Centroid> centroids, Path path, boolean csvWriting) throws IOException {
+        FileSystem fs = path.getFileSystem(conf);
+        // A BufferedWriter, unlike a PrintWriter, reports the errors of the writes and of the close
+        try (BufferedWriter out = new BufferedWriter(new OutputStreamWriter(fs.create(path, true)))) {
+            for (Centroid centroid : centroids) {
+                if (csvWriting) {
+                    StringBuilder line = new StringBuilder().append(centroid.getCentroid_id().get());
+                    for (double coordinate : centroid.getPoint().getCoordinates()) {
+                        line.append(',').append(coordinate);
+                    }
+                    out.write(line.toString());
+                } else {
+                    out.write(centroid.getCentroid_id().get() + "\t" + centroid.getPoint().toString());
+                }
+                out.newLine();
+            }
+        }
+    }
+
     /**
      * Logs iteration information to a log file.
      *
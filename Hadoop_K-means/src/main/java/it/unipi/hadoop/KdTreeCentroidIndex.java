@@ -0,0 +1,250 @@
+package it.unipi.hadoop;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * CentroidIndex that searches the nearest centroid in a k-d tree built over the centroids.
+ * Every node of the tree stores the bounding box of its centroids: a query descends first into the child whose box
+ * is nearer to the point, and skips the boxes farther than the current candidate, so with few dimensions it
+ * computes the distances of a few leaves instead of all the k centroids.
+ * The lower bound of a box is accumulated in order of dimension like the distances, and the rounding of every
+ * operation is monotonic, so it never exceeds the computed distance of a centroid of the box: only the boxes
+ * strictly farther than the candidate are skipped, and ties are broken by the lowest index, so the result is
+ * the same as the one of the linear scan.
+ */
+public class KdTreeCentroidIndex implements CentroidIndex {
+
+    /**
+     * Maximum number of centroids of a leaf, whose distances are computed in one scan.
+     */
+    private static final int LEAF_SIZE = 8;
+
+    /**
+     * Dimension of the centroids.
+     */
+    private final int dimension;
+
+    /**
+     * Index in the CentroidSet of the centroids, in the order of the leaves.
+     */
+    private final int[] indices;
+
+    /**
+     * Coordinates of the centroids, in the order of the leaves and in row-major order.
+     */
+    private final double[] coordinates;
+
+    /**
+     * First and last (excluded) position of the centroids of every node.
+     */
+    private final int[] nodeStart;
+    private final int[] nodeEnd;
+
+    /**
+     * Children of every node, -1 for the leaves.
+     */
+    private final int[] leftChild;
+    private final int[] rightChild;
+
+    /**
+     * Lower and upper corners of the bounding box of every node, in row-major order.
+     */
+    private final double[] lower;
+    private final double[] upper;
+
+    /**
+     * Number of nodes of the tree, the root is the node 0.
+     */
+    private int nodes = 0;
+
+    /**
+     * Index of the nearest centroid found so far by the current query, -1 before the first distance.
+     */
+    private int nearest;
+
+    /**
+     * Squared distance of the nearest centroid found so far, which is the one of the last query at its end.
+     */
+    private double squaredDistance;
+
+    /**
+     * Number of distances computed by all the queries.
+     */
+    private long distanceComputations = 0;
+
+    /**
+     * Constructor for creating a KdTreeCentroidIndex over a set of centroids.
+     * Every node splits its centroids at the median of the dimension with the widest extent.
+     *
+     * @param centroids The centroids of the index.
+     */
+    public KdTreeCentroidIndex(CentroidSet centroids) {
+        int k = centroids.size();
+        this.dimension = centroids.getDimension();
+        this.indices = new int[k];
+        this.coordinates = new double[k * dimension];
+        int maxNodes = Math.max(1, 2 * k - 1);
+        this.nodeStart = new int[maxNodes];
+        this.nodeEnd = new int[maxNodes];
+        this.leftChild = new int[maxNodes];
+        this.rightChild = new int[maxNodes];
+        this.lower = new double[maxNodes * dimension];
+        this.upper = new double[maxNodes * dimension];
+
+        Integer[] order = new Integer[k];
+        for (int i = 0; i < k; i++) {
+            order[i] = i;
+        }
+        build(centroids.getCoordinates(), order, 0, k);
+
+        for (int position = 0; position < k; position++) {
+            indices[position] = order[position];
+            System.arraycopy(centroids.getCoordinates(), order[position] * dimension, coordinates, position * dimension, dimension);
+        }
+    }
+
+    /**
+     * Builds the subtree of a range of centroids, sorting the range so that every child gets a contiguous part of it.
+     *
+     * @param points The coordinates of the centroids, in row-major order.
+     * @param order  The indices of the centroids, in the order of the leaves built so far.
+     * @param start  The first position of the range.
+     * @param end    The last position (excluded) of the range.
+     * @return The node of the subtree.
+     */
+    private int build(double[] points, Integer[] order, int start, int end) {
+        int node = nodes++;
+        nodeStart[node] = start;
+        nodeEnd[node] = end;
+        leftChild[node] = -1;
+        rightChild[node] = -1;
+
+        // Compute the bounding box of the range
+        int box = node * dimension;
+        Arrays.fill(lower, box, box + dimension, Double.POSITIVE_INFINITY);
+        Arrays.fill(upper, box, box + dimension, Double.NEGATIVE_INFINITY);
+        for (int position = start; position < end; position++) {
+            int offset = order[position] * dimension;
+            for (int j = 0; j < dimension; j++) {
+                lower[box + j] = Math.min(lower[box + j], points[offset + j]);
+                upper[box + j] = Math.max(upper[box + j], points[offset + j]);
+            }
+        }
+
+        // Split the range at the median of the widest dimension, unless it is small or made of identical centroids
+        int split = -1;
+        double extent = 0;
+        for (int j = 0; j < dimension; j++) {
+            if (upper[box + j] - lower[box + j] > extent) {
+                split = j;
+                extent = upper[box + j] - lower[box + j];
+            }
+        }
+        if (end - start <= LEAF_SIZE || split == -1) {
+            return node;
+        }
+
+        final int dimensionOffset = split;
+        Arrays.sort(order, start, end, Comparator.comparingDouble((Integer i) -> points[i * dimension + dimensionOffset])
+                .thenComparingInt(i -> i));
+        int middle = (start + end) >>> 1;
+        leftChild[node] = build(points, order, start, middle);
+        rightChild[node] = build(points, order, middle, end);
+        return node;
+    }
+
+    /**
+     * Calculates the squared distance between a point and the bounding box of a node.
+     *
+     * @param node  The node.
+     * @param point The coordinates of the point.
+     * @return The squared distance between the point and the nearest point of the box.
+     */
+    private double boxDistance(int node, double[] point) {
+        int box = node * dimension;
+        double sum = 0;
+        for (int j = 0; j < dimension; j++) {
+            double diff = 0;
+            if (point[j] < lower[box + j]) {
+                diff = lower[box + j] - point[j];
+            } else if (point[j] > upper[box + j]) {
+                diff = point[j] - upper[box + j];
+            }
+            sum += diff * diff;
+        }
+        return sum;
+    }
+
+    /**
+     * Searches the nearest centroid in the subtree of a node, unless its box is farther than the current candidate.
+     *
+     * @param node     The node.
+     * @param distance The squared distance between the point and the box of the node.
+     * @param point    The coordinates of the point.
+     */
+    private void search(int node, double distance, double[] point) {
+        if (nearest != -1 && distance > squaredDistance) {
+            return;
+        }
+
+        if (leftChild[node] == -1) {
+            // Compare the point with every centroid of the leaf
+            for (int position = nodeStart[node]; position < nodeEnd[node]; position++) {
+                double centroidDistance = DistanceKernel.squaredDistance(coordinates, position * dimension, point, 0, dimension);
+                int index = indices[position];
+                if (nearest == -1 || centroidDistance < squaredDistance || (centroidDistance == squaredDistance && index < nearest)) {
+                    nearest = index;
+                    squaredDistance = centroidDistance;
+                }
+            }
+            distanceComputations += nodeEnd[node] - nodeStart[node];
+            return;
+        }
+
+        // Visit first the child whose box is nearer to the point
+        double leftDistance = boxDistance(leftChild[node], point);
+        double rightDistance = boxDistance(rightChild[node], point);
+        if (leftDistance <= rightDistance) {
+            search(leftChild[node], leftDistance, point);
+            search(rightChild[node], rightDistance, point);
+        } else {
+            search(rightChild[node], rightDistance, point);
+            search(leftChild[node], leftDistance, point);
+        }
+    }
+
+    /**
+     * Finds the centroid nearest to a point, skipping the subtrees whose box is farther than the current candidate.
+     *
+     * @param point The coordinates of the point.
+     * @return The index of the nearest centroid in the CentroidSet.
+     */
+    @Override
+    public int nearest(double[] point) {
+        nearest = -1;
+        squaredDistance = Double.MAX_VALUE;
+        search(0, boxDistance(0, point), point);
+        return nearest;
+    }
+
+    /**
+     * Retrieves the squared Euclidean distance between the point of the last query and its nearest centroid.
+     *
+     * @return The squared distance of the last query.
+     */
+    @Override
+    public double getSquaredDistance() {
+        return squaredDistance;
+    }
+
+    /**
+     * Retrieves the number of point-centroid distances computed by all the queries of the index.
+     *
+     * @return The number of distances computed.
+     */
+    @Override
+    public long getDistanceComputations() {
+        return distanceComputations;
+    }
+}
@@ -0,0 +1,70 @@
+package it.unipi.hadoop;
+
+/**
+ * CentroidIndex that compares the point with every centroid in one pass of the blocked distance kernel.
+ */
+public class LinearCentroidIndex implements CentroidIndex {
+
+    /**
+     * Centroids of the index.
+     */
+    private final CentroidSet centroids;
+
+    /**
+     * Buffer for the partial distances of a block of centroids.
+     */
+    private final double[] distances;
+
+    /**
+     * Squared distance of the last query, stored by the kernel.
+     */
+    private final double[] squaredDistance = new double[1];
+
+    /**
+     * Number of distances computed by all the queries.
+     */
+    private long distanceComputations = 0;
+
+    /**
+     * Constructor for creating a LinearCentroidIndex over a set of centroids.
+     *
+     * @param centroids The centroids of the index.
+     */
+    public LinearCentroidIndex(CentroidSet centroids) {
+        this.centroids = centroids;
+        this.distances = new double[Math.min(centroids.size(), DistanceKernel.BLOCK_SIZE)];
+    }
+
+    /**
+     * Finds the centroid nearest to a point by computing its distance from every centroid.
+     *
+     * @param point The coordinates of the point.
+     * @return The index of the nearest centroid in the CentroidSet.
+     */
+    @Override
+    public int nearest(double[] point) {
+        distanceComputations += centroids.size();
+        return DistanceKernel.nearest(centroids.getTransposedCoordinates(), centroids.size(), centroids.getDimension(),
+                point, distances, squaredDistance);
+    }
+
+    /**
+     * Retrieves the squared Euclidean distance between the point of the last query and its nearest centroid.
+     *
+     * @return The squared distance of the last query.
+     */
+    @Override
+    public double getSquaredDistance() {
+        return squaredDistance[0];
+    }
+
+    /**
+     * Retrieves the number of point-centroid distances computed by all the queries of the index.
+     *
+     * @return The number of distances computed.
+     */
+    @Override
+    public long getDistanceComputations() {
+        return distanceComputations;
+    }
+}
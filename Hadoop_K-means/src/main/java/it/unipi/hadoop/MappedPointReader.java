@@ -0,0 +1,288 @@
+package it.unipi.hadoop;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Sequential reader of the points of a local file through memory mapping.
+ * The file is mapped in windows of at most WINDOW_SIZE bytes, so files bigger than 2 GB can be scanned,
+ * and its bytes are never copied in the heap by the I/O layer. Two layouts are supported:
+ * <ul>
+ *     <li>TEXT: one point per line, with the coordinates separated by a character (e.g. the CSV dataset).
+ *     The bytes of each line are parsed by the CoordinateParser, through a scratch buffer reused for all the lines;</li>
+ *     <li>BINARY: the layout written by KMeansUtil.writeCentroidsFile, i.e. the number of points and their dimension
+ *     as ints, followed by the coordinates of all the points as doubles. The coordinates are read through a
+ *     DoubleBuffer view of the mapped window.</li>
+ * </ul>
+ */
+public class MappedPointReader implements Closeable {
+
+    /**
+     * Layouts of the points in the file.
+     */
+    public enum Layout {
+        TEXT,
+        BINARY
+    }
+
+    /**
+     * Maximum size of a mapped window.
+     */
+    private static final int WINDOW_SIZE = 1 << 28;
+
+    /**
+     * Size of the header of the binary layout.
+     */
+    private static final int BINARY_HEADER_SIZE = 8;
+
+    /**
+     * File being read.
+     */
+    private final RandomAccessFile file;
+
+    /**
+     * Channel of the file being read.
+     */
+    private final FileChannel channel;
+
+    /**
+     * Size of the file.
+     */
+    private final long fileSize;
+
+    /**
+     * Layout of the points in the file.
+     */
+    private final Layout layout;
+
+    /**
+     * Character separating the coordinates in the text layout.
+     */
+    private final char separator;
+
+    /**
+     * Number of points of the binary layout.
+     */
+    private long count;
+
+    /**
+     * Dimension of the points of the binary layout.
+     */
+    private int dimension;
+
+    /**
+     * Number of points of the binary layout read so far. The end of the points is checked on it rather than
+     * on the position, which does not move when the dimension is 0.
+     */
+    private long read = 0;
+
+    /**
+     * Currently mapped window of the file.
+     */
+    private MappedByteBuffer window;
+
+    /**
+     * View of the current window as doubles, used by the binary layout.
+     */
+    private DoubleBuffer doubleWindow;
+
+    /**
+     * Position of the current window in the file.
+     */
+    private long windowStart;
+
+    /**
+     * Position in the file of the next point.
+     */
+    private long position;
+
+    /**
+     * Scratch buffer for the bytes of a line of the text layout.
+     */
+    private byte[] line = new byte[256];
+
+    /**
+     * Constructor for creating a MappedPointReader over a local file.
+     *
+     * @param path      The local file.
+     * @param layout    The layout of the points in the file.
+     * @param separator The character separating the coordinates in the text layout.
+     * @throws IOException If an I/O error occurs during the opening of the file.
+     */
+    public MappedPointReader(File path, Layout layout, char separator) throws IOException {
+        this.file = new RandomAccessFile(path, "r");
+        this.channel = file.getChannel();
+        this.fileSize = channel.size();
+        this.layout = layout;
+        this.separator = separator;
+
+        if (layout == Layout.BINARY) {
+            if (fileSize < BINARY_HEADER_SIZE) {
+                close();
+                throw new EOFException("Missing header in binary points file " + path);
+            }
+            map(0);
+            this.count = window.getInt(0);
+            this.dimension = window.getInt(4);
+            this.position = BINARY_HEADER_SIZE;
+            if (count < 0 || dimension < 0) {
+                close();
+                throw new IOException("Invalid header in binary points file " + path + ": " + count + " points of dimension " + dimension);
+            }
+            if (BINARY_HEADER_SIZE + count * dimension * Double.BYTES > fileSize) {
+                close();
+                throw new EOFException("Truncated binary points file " + path);
+            }
+        }
+    }
+
+    /**
+     * Reads the next point of the file.
+     * The coordinates array of the point is reused when the dimension does not change.
+     * Empty lines of the text layout are skipped.
+     *
+     * @param point The point where the coordinates are stored.
+     * @return True if a point has been read, false at the end of the file.
+     * @throws IOException If an I/O error occurs or a line is not a valid point.
+     */
+    public boolean next(Point point) throws IOException {
+        return layout == Layout.BINARY ? nextBinary(point) : nextText(point);
+    }
+
+    /**
+     * Reads the next point of the binary layout.
+     *
+     * @param point The point where the coordinates are stored.
+     * @return True if a point has been read, false at the end of the file.
+     * @throws IOException If an I/O error occurs.
+     */
+    private boolean nextBinary(Point point) throws IOException {
+        if (read == count) {
+            return false;
+        }
+        long recordSize = (long) dimension * Double.BYTES;
+        // Map the next window when the record is not entirely in the current one
+        if (position + recordSize > windowStart + window.limit()) {
+            map(position);
+        }
+        doubleWindow.position((int) ((position - windowStart) / Double.BYTES));
+        doubleWindow.get(point.reset(dimension), 0, dimension);
+        position += recordSize;
+        read++;
+        return true;
+    }
+
+    /**
+     * Reads the next point of the text layout.
+     *
+     * @param point The point where the coordinates are stored.
+     * @return True if a point has been read, false at the end of the file.
+     * @throws IOException If an I/O error occurs or the line is not a valid point.
+     */
+    private boolean nextText(Point point) throws IOException {
+        while (position < fileSize) {
+            if (window == null || position >= windowStart + window.limit()) {
+                map(position);
+            }
+
+            // Look for the end of the line in the current window
+            int start = (int) (position - windowStart);
+            int end = start;
+            int limit = window.limit();
+            while (end < limit && window.get(end) != '\n') {
+                end++;
+            }
+            if (end == limit && windowStart + limit < fileSize) {
+                // The line continues in the next window: map a window starting from the line
+                if (start == 0) {
+                    throw new IOException("Line longer than " + WINDOW_SIZE + " bytes at position " + position);
+                }
+                map(position);
+                continue;
+            }
+
+            int length = end - start;
+            position = windowStart + end + 1;
+            // Skip the blank lines, e.g. at the end of the file
+            boolean blank = true;
+            for (int i = start; i < end && blank; i++) {
+                byte b = window.get(i);
+                blank = b == ' ' || b == '\t' || b == '\r';
+            }
+            if (blank) {
+                continue;
+            }
+
+            // Copy the bytes of the line in the scratch buffer and parse them
+            if (line.length < length) {
+                line = new byte[Math.max(length, line.length * 2)];
+            }
+            window.position(start);
+            window.get(line, 0, length);
+            double[] coordinates = point.reset(CoordinateParser.countFields(line, 0, length, separator));
+            try {
+                CoordinateParser.parse(line, 0, length, separator, coordinates);
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid point at position " + (windowStart + start) + ": " + e.getMessage(), e);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Maps a window of the file.
+     *
+     * @param start The position of the window in the file.
+     * @throws IOException If an I/O error occurs during the mapping.
+     */
+    private void map(long start) throws IOException {
+        long size = Math.min(WINDOW_SIZE, fileSize - start);
+        if (layout == Layout.BINARY && start >= BINARY_HEADER_SIZE) {
+            // Keep whole records in the window
+            long recordSize = Math.max(1, (long) dimension * Double.BYTES);
+            if (size >= recordSize) {
+                size -= size % recordSize;
+            }
+        }
+        window = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+        doubleWindow = window.asDoubleBuffer();
+        windowStart = start;
+    }
+
+    /**
+     * Retrieves the number of points of the binary layout.
+     *
+     * @return The number of points, or -1 for the text layout.
+     */
+    public long getCount() {
+        return layout == Layout.BINARY ? count : -1;
+    }
+
+    /**
+     * Retrieves the dimension of the points of the binary layout.
+     *
+     * @return The dimension of the points, or -1 for the text layout.
+     */
+    public int getDimension() {
+        return layout == Layout.BINARY ? dimension : -1;
+    }
+
+    /**
+     * Closes the file. The mapped windows are released by the garbage collector.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    @Override
+    public void close() throws IOException {
+        window = null;
+        doubleWindow = null;
+        file.close();
+    }
+}
@@ -1,47 +1,49 @@
 package it.unipi.hadoop;
 
 import com.sun.istack.NotNull;
+import org.apache.hadoop.io.Text;
 import org.apache.hadoop.io.Writable;
 
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.stream.Collectors;
+import java.util.Arrays;
 
 /**
  * Represents a point in the KMeans algorithm.
  * Each point is characterized by its coordinates and can perform various operations such as distance calculation, addition, and averaging.
+ * The coordinates are stored in a primitive array, so that the operations on points never box or allocate.
  */
 public class Point implements Writable {
 
     /**
-     * ArrayList of doubles representing the point's coordinates
+     * Array of doubles representing the point's coordinates
      */
-    private ArrayList<Double> coordinates;
+    protected double[] coordinates;
 
     /**
      * If instances > 1, the point is a partialSum and this number represents
      * the number of points that have been added up. It is useful for the average.
      */
-    private int instances;
+    protected int instances;
 
     /**
      * Constructor for creating a Point object with the given coordinates.
+     * The array is not copied, the point takes ownership of it.
      *
      * @param coordinates_ Coordinates of the new point.
      */
-    public Point(ArrayList<Double> coordinates_) {
+    public Point(double[] coordinates_) {
         this.coordinates = coordinates_;
         this.instances = 1;
     }
 
     /**
      * Default constructor for a Point object.
-     * Initializes the coordinates to an empty ArrayList and the instances to 1.
+     * Initializes the coordinates to an empty array and the instances to 1.
      */
     public Point() {
-        this.coordinates = new ArrayList<>();
+        this.coordinates = new double[0];
         this.instances = 1;
     }
 
@@ -53,9 +55,9 @@ public class Point implements Writable {
      */
     public Point(String text) throws NullPointerException {
         String[] c = text.split(",");
-        this.coordinates = new ArrayList<>();
-        for (String x : c) {
-            this.coordinates.add(Double.parseDouble(x));
+        this.coordinates = new double[c.length];
+        for (int i = 0; i < c.length; i++) {
+            this.coordinates[i] = Double.parseDouble(c[i]);
         }
         this.instances = 1;
     }
@@ -70,8 +72,8 @@ public class Point implements Writable {
      */
     @Override
     public void write(DataOutput dataOutput) throws IOException {
-        dataOutput.writeInt(this.coordinates.size());
-        for (Double coordinate : this.coordinates) {
+        dataOutput.writeInt(this.coordinates.length);
+        for (double coordinate : this.coordinates) {
             dataOutput.writeDouble(coordinate);
         }
         dataOutput.writeInt(instances);
@@ -79,17 +81,20 @@ public class Point implements Writable {
 
     /**
      * Reads the Point object from a DataInput stream.
+     * The coordinates array is reused when the dimension does not change, so that
+     * deserializing a stream of points of the same dimension does not allocate.
      *
      * @param dataInput The input stream to read the data from.
      * @throws IOException If an I/O error occurs.
      */
     @Override
     public void readFields(DataInput dataInput) throws IOException {
-        this.coordinates = new ArrayList<>();
         int size = dataInput.readInt();
+        if (this.coordinates.length != size) {
+            this.coordinates = new double[size];
+        }
         for (int i = 0; i < size; i++) {
-            double value = dataInput.readDouble();
-            this.coordinates.add(value);
+            this.coordinates[i] = dataInput.readDouble();
         }
         this.instances = dataInput.readInt();
     }
@@ -103,22 +108,30 @@ public class Point implements Writable {
      * @return The Euclidean distance between the two points.
      */
     public double getDistance(@NotNull Point point) {
-        double sum = 0;
-        for (int i = 0; i < coordinates.size(); i++) {
-            double diff = this.coordinates.get(i) - point.coordinates.get(i);
-            sum += diff * diff;
-        }
-        return Math.sqrt(sum);
+        return Math.sqrt(getSquaredDistance(point));
+    }
+
+    /**
+     * Calculates the squared Euclidean distance between two points.
+     * It is enough to compare distances, and it avoids the square root.
+     *
+     * @param point The point from which you want to calculate the distance.
+     * @return The squared Euclidean distance between the two points.
+     */
+    public double getSquaredDistance(@NotNull Point point) {
+        return DistanceKernel.squaredDistance(this.coordinates, 0, point.coordinates, 0, coordinates.length);
     }
 
     /**
      * Adds two points coordinate by coordinate.
+     * The sum is accumulated in place in the coordinates of the current point.
      *
      * @param point The point to be added to the current one.
      */
     public void add(Point point) {
-        for (int i = 0; i < this.coordinates.size(); i++) {
-            this.coordinates.set(i, this.coordinates.get(i) + point.getCoordinates().get(i));
+        double[] other = point.coordinates;
+        for (int i = 0; i < this.coordinates.length; i++) {
+            this.coordinates[i] += other[i];
         }
         this.instances += point.getInstances();
     }
@@ -128,21 +141,93 @@ public class Point implements Writable {
      * Divides each coordinate by the number of instances.
      */
     public void average() {
-        this.coordinates.replaceAll(aDouble -> aDouble / this.instances);
+        for (int i = 0; i < this.coordinates.length; i++) {
+            this.coordinates[i] /= this.instances;
+        }
+        this.instances = 1;
+    }
+
+    /**
+     * Copies the coordinates and the instances of another point into the current one.
+     * The coordinates array is reused when the dimension does not change.
+     * It is used to start a partial sum from a point owned by Hadoop, which reuses
+     * the same object for every value of a reduce iterator.
+     *
+     * @param point The point to be copied.
+     */
+    public void set(Point point) {
+        if (this.coordinates.length != point.coordinates.length) {
+            this.coordinates = new double[point.coordinates.length];
+        }
+        System.arraycopy(point.coordinates, 0, this.coordinates, 0, point.coordinates.length);
+        this.instances = point.instances;
+    }
+
+    /**
+     * Sets the coordinates of the point from a comma-separated text, reading the UTF-8 bytes directly.
+     * The coordinates array is reused when the dimension does not change, so that parsing
+     * a stream of records of the same dimension does not allocate.
+     *
+     * @param text The input text representing the coordinates.
+     * @throws NumberFormatException If the text does not contain valid coordinates.
+     */
+    public void set(Text text) throws NumberFormatException {
+        byte[] bytes = text.getBytes();
+        int length = text.getLength();
+        CoordinateParser.parse(bytes, 0, length, ',', reset(CoordinateParser.countFields(bytes, 0, length, ',')));
+    }
+
+    /**
+     * Prepares the point to receive the coordinates of a single point of the given dimension.
+     * The coordinates array is reused when the dimension does not change.
+     *
+     * @param dimension The dimension of the point.
+     * @return The coordinates array of the point, to be filled by the caller.
+     */
+    public double[] reset(int dimension) {
+        if (this.coordinates.length != dimension) {
+            this.coordinates = new double[dimension];
+        }
         this.instances = 1;
+        return this.coordinates;
+    }
+
+    /**
+     * Resets the point to the empty partial sum of the given dimension.
+     * All the coordinates and the instances are set to zero.
+     *
+     * @param dimension The dimension of the partial sum.
+     */
+    public void clear(int dimension) {
+        if (this.coordinates.length != dimension) {
+            this.coordinates = new double[dimension];
+        } else {
+            Arrays.fill(this.coordinates, 0.0);
+        }
+        this.instances = 0;
     }
 
     /* Getters and setters */
 
     /**
-     * Retrieves the ArrayList of doubles representing the coordinates.
+     * Retrieves the array of doubles representing the coordinates.
+     * The returned array is the internal storage of the point, not a copy.
      *
-     * @return The ArrayList of doubles representing the coordinates.
+     * @return The array of doubles representing the coordinates.
      */
-    public ArrayList<Double> getCoordinates() {
+    public double[] getCoordinates() {
         return coordinates;
     }
 
+    /**
+     * Retrieves the dimension of the point.
+     *
+     * @return The number of coordinates of the point.
+     */
+    public int getDimension() {
+        return coordinates.length;
+    }
+
     /**
      * Retrieves the number of instances of the partial sum.
      *
@@ -158,8 +243,13 @@ public class Point implements Writable {
      * @return The string representation of the Point object.
      */
     public String toString() {
-        return this.coordinates.stream()
-                .map(Object::toString)
-                .collect(Collectors.joining(" "));
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < coordinates.length; i++) {
+            if (i > 0) {
+                sb.append(' ');
+            }
+            sb.append(coordinates[i]);
+        }
+        return sb.toString();
     }
 }
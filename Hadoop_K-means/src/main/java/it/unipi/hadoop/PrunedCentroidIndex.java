@@ -0,0 +1,134 @@
+package it.unipi.hadoop;
+
+import java.util.Arrays;
+
+/**
+ * CentroidIndex that skips the centroids that cannot be closer than the current candidate, using the triangle inequality.
+ * If c is the current nearest centroid of a point x and d(c, c') &gt;= 2 d(x, c), then d(x, c') &gt;= d(x, c),
+ * so c' does not need to be compared with x (Elkan's lemma). Moreover, if d(x, c) is smaller than half the distance
+ * between c and its closest centroid, no other centroid can be closer (Hamerly's bound).
+ * The centroid-centroid distances are computed once, when the index is built, so the index pays off when k is large.
+ * The centroids are visited in order of index and only a strictly smaller distance replaces the candidate,
+ * so the result is the same as the one of the linear scan.
+ */
+public class PrunedCentroidIndex implements CentroidIndex {
+
+    /**
+     * Relative margin applied to the bounds, so that rounding errors never prune a centroid that could be closer.
+     */
+    private static final double BOUND_MARGIN = 1 + 1e-9;
+
+    /**
+     * Centroids of the index.
+     */
+    private final CentroidSet centroids;
+
+    /**
+     * Quarter of the squared distance between each pair of centroids, i.e. (d(c, c') / 2)^2, in row-major order.
+     * The values are floats rounded down, which halves the memory of the matrix and can only prune fewer centroids.
+     */
+    private final float[] halfDistances;
+
+    /**
+     * For each centroid, the quarter of the squared distance from its closest centroid.
+     */
+    private final double[] closestHalfDistances;
+
+    /**
+     * Squared distance of the last query.
+     */
+    private double squaredDistance;
+
+    /**
+     * Number of distances computed by all the queries.
+     */
+    private long distanceComputations = 0;
+
+    /**
+     * Constructor for creating a PrunedCentroidIndex over a set of centroids.
+     * It computes the distances between all the pairs of centroids, which needs 4 k^2 bytes of memory,
+     * e.g. 4 MB with 1024 centroids.
+     *
+     * @param centroids The centroids of the index.
+     */
+    public PrunedCentroidIndex(CentroidSet centroids) {
+        this.centroids = centroids;
+        int k = centroids.size();
+        this.halfDistances = new float[k * k];
+        this.closestHalfDistances = new double[k];
+        Arrays.fill(closestHalfDistances, Double.MAX_VALUE);
+
+        for (int i = 0; i < k; i++) {
+            for (int j = i + 1; j < k; j++) {
+                double halfDistance = centroids.getSquaredDistance(i, j) / 4;
+                float roundedDown = (float) halfDistance;
+                if (roundedDown > halfDistance) {
+                    roundedDown = Math.nextDown(roundedDown);
+                }
+                halfDistances[i * k + j] = roundedDown;
+                halfDistances[j * k + i] = roundedDown;
+                closestHalfDistances[i] = Math.min(closestHalfDistances[i], halfDistance);
+                closestHalfDistances[j] = Math.min(closestHalfDistances[j], halfDistance);
+            }
+        }
+    }
+
+    /**
+     * Finds the centroid nearest to a point, skipping the centroids excluded by the triangle inequality.
+     *
+     * @param point The coordinates of the point.
+     * @return The index of the nearest centroid in the CentroidSet.
+     */
+    @Override
+    public int nearest(double[] point) {
+        int k = centroids.size();
+        int nearest = 0;
+        double distanceFromCentroid = centroids.getSquaredDistance(0, point);
+        distanceComputations++;
+
+        // The first centroid is the nearest if the point is within half the distance from its closest centroid
+        if (distanceFromCentroid * BOUND_MARGIN < closestHalfDistances[0]) {
+            squaredDistance = distanceFromCentroid;
+            return nearest;
+        }
+
+        for (int i = 1; i < k; i++) {
+            // Skip the centroid if it is at least twice as far from the candidate as the point
+            if (halfDistances[nearest * k + i] > distanceFromCentroid * BOUND_MARGIN) {
+                continue;
+            }
+            double distance = centroids.getSquaredDistance(i, point);
+            distanceComputations++;
+            if (distance < distanceFromCentroid) {
+                nearest = i;
+                distanceFromCentroid = distance;
+                // Stop if the new candidate is within half the distance from its closest centroid
+                if (distanceFromCentroid * BOUND_MARGIN < closestHalfDistances[nearest]) {
+                    break;
+                }
+            }
+        }
+        squaredDistance = distanceFromCentroid;
+        return nearest;
+    }
+
+    /**
+     * Retrieves the squared Euclidean distance between the point of the last query and its nearest centroid.
+     *
+     * @return The squared distance of the last query.
+     */
+    @Override
+    public double getSquaredDistance() {
+        return squaredDistance;
+    }
+
+    /**
+     * Retrieves the number of point-centroid distances computed by all the queries of the index.
+     *
+     * @return The number of distances computed.
+     */
+    @Override
+    public long getDistanceComputations() {
+        return distanceComputations;
+    }
+}
@@ -0,0 +1,85 @@
+package it.unipi.hadoop;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.InputFormat;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
+import org.apache.hadoop.util.ReflectionUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Input format of the mini-batch iterations that reads only a random sample of the splits of another input format.
+ * The splits not in the sample are never opened, so the bytes read by an iteration are about
+ * kmeans.minibatch.fraction times the size of the dataset. Every iteration draws a different sample.
+ * When the fraction is not a whole number of splits, e.g. when it is smaller than one split, the sample is rounded up
+ * and the mappers also sample the records of the splits, so that the points used are still the given fraction.
+ *
+ * @param <K> The type of the input keys.
+ * @param <V> The type of the input values.
+ */
+public class SampledInputFormat<K, V> extends InputFormat<K, V> {
+
+    /**
+     * Configuration key of the input format whose splits are sampled.
+     */
+    public static final String DELEGATE_KEY = "kmeans.minibatch.input.format";
+
+    /**
+     * Creates the input format whose splits are sampled.
+     *
+     * @param conf The Hadoop configuration.
+     * @return The delegate input format.
+     */
+    @SuppressWarnings("unchecked")
+    private InputFormat<K, V> getDelegate(Configuration conf) {
+        return ReflectionUtils.newInstance(conf.getClass(DELEGATE_KEY, TextInputFormat.class, InputFormat.class), conf);
+    }
+
+    /**
+     * Computes the splits of the delegate input format and keeps a random sample of them.
+     * At least one split is always kept; the fraction of the records of the sample to be used by the mappers
+     * is stored in the configuration of the job, which is submitted after its splits are computed.
+     *
+     * @param context The context of the job.
+     * @return The sampled splits.
+     * @throws IOException          If an I/O error occurs.
+     * @throws InterruptedException If the computation of the splits is interrupted.
+     */
+    @Override
+    public List<InputSplit> getSplits(JobContext context) throws IOException, InterruptedException {
+        Configuration conf = context.getConfiguration();
+        List<InputSplit> splits = new ArrayList<>(getDelegate(conf).getSplits(context));
+        if (splits.isEmpty()) {
+            return splits;
+        }
+
+        double fraction = conf.getDouble(KMeansUtil.MINIBATCH_FRACTION_KEY, KMeansUtil.DEFAULT_MINIBATCH_FRACTION);
+        int sampleSize = (int) Math.max(1, Math.min(splits.size(), Math.ceil(fraction * splits.size())));
+        conf.setDouble(KMeansUtil.MINIBATCH_RECORD_FRACTION_KEY, Math.min(1.0, fraction * splits.size() / sampleSize));
+        Random random = new Random(conf.getLong(KMeansUtil.MINIBATCH_SEED_KEY, 0L) * 1000003L + conf.getInt(KMeansUtil.ITERATION_KEY, 0));
+        Collections.shuffle(splits, random);
+        return new ArrayList<>(splits.subList(0, sampleSize));
+    }
+
+    /**
+     * Creates the record reader of the delegate input format for a split.
+     *
+     * @param split   The split to be read.
+     * @param context The context of the task.
+     * @return The record reader of the split.
+     * @throws IOException          If an I/O error occurs.
+     * @throws InterruptedException If the creation is interrupted.
+     */
+    @Override
+    public RecordReader<K, V> createRecordReader(InputSplit split, TaskAttemptContext context) throws IOException, InterruptedException {
+        return getDelegate(context.getConfiguration()).createRecordReader(split, context);
+    }
+}
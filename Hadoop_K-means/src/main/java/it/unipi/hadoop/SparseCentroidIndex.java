@@ -0,0 +1,115 @@
+package it.unipi.hadoop;
+
+import java.util.Arrays;
+
+/**
+ * Index answering nearest-centroid queries for sparse points.
+ * The squared distance is expanded as ||x||^2 + ||c||^2 - 2 x.c, with the squared norms of the centroids
+ * computed once, so that a query only reads the coordinates of the centroids at the non-zero indices of the point.
+ * The dot products are accumulated over the dimension-major coordinates of the CentroidSet, where the coordinates
+ * of all the centroids at the same index are contiguous.
+ * Like a CentroidIndex, it keeps the state of the last query, so every task must use its own instance.
+ */
+public class SparseCentroidIndex {
+
+    /**
+     * Centroids of the index.
+     */
+    private final CentroidSet centroids;
+
+    /**
+     * Squared norms of the centroids, in order of index.
+     */
+    private final double[] norms;
+
+    /**
+     * Buffer for the dot products of the point with every centroid.
+     */
+    private final double[] dots;
+
+    /**
+     * Squared distance of the last query.
+     */
+    private double squaredDistance;
+
+    /**
+     * Number of distances computed by all the queries.
+     */
+    private long distanceComputations = 0;
+
+    /**
+     * Constructor for creating a SparseCentroidIndex over a set of centroids.
+     *
+     * @param centroids The centroids of the index.
+     */
+    public SparseCentroidIndex(CentroidSet centroids) {
+        this.centroids = centroids;
+        this.norms = new double[centroids.size()];
+        this.dots = new double[centroids.size()];
+        double[] coordinates = centroids.getCoordinates();
+        int dimension = centroids.getDimension();
+        for (int i = 0; i < norms.length; i++) {
+            double norm = 0.0;
+            for (int j = i * dimension; j < (i + 1) * dimension; j++) {
+                norm += coordinates[j] * coordinates[j];
+            }
+            norms[i] = norm;
+        }
+    }
+
+    /**
+     * Finds the centroid nearest to a sparse point.
+     * When several centroids are at the same distance, the one with the lowest index is returned.
+     *
+     * @param point The sparse point.
+     * @return The index of the nearest centroid in the CentroidSet.
+     */
+    public int nearest(SparsePoint point) {
+        int k = norms.length;
+        double[] transposed = centroids.getTransposedCoordinates();
+        int[] indices = point.getIndices();
+        double[] values = point.getValues();
+
+        Arrays.fill(dots, 0.0);
+        for (int p = 0; p < point.getSize(); p++) {
+            double value = values[p];
+            int offset = indices[p] * k;
+            for (int i = 0; i < k; i++) {
+                dots[i] += value * transposed[offset + i];
+            }
+        }
+
+        double pointNorm = point.getSquaredNorm();
+        int nearest = 0;
+        double minDistance = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < k; i++) {
+            double distance = pointNorm + norms[i] - 2.0 * dots[i];
+            if (distance < minDistance) {
+                minDistance = distance;
+                nearest = i;
+            }
+        }
+        distanceComputations += k;
+        // The expansion can be slightly negative because of the rounding
+        squaredDistance = Math.max(0.0, minDistance);
+        return nearest;
+    }
+
+    /**
+     * Retrieves the squared Euclidean distance between the point of the last query and its nearest centroid.
+     *
+     * @return The squared distance of the last query.
+     */
+    public double getSquaredDistance() {
+        return squaredDistance;
+    }
+
+    /**
+     * Retrieves the number of point-centroid distances computed by all the queries of the index.
+     *
+     * @return The number of distances computed.
+     */
+    public long getDistanceComputations() {
+        return distanceComputations;
+    }
+}
@@ -0,0 +1,58 @@
+package it.unipi.hadoop;
+
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.mapreduce.Reducer;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Combiner of the K-Means algorithm over sparse points.
+ * It sums the sparse points of a centroid into a dense buffer and emits the non-zeros of the sum.
+ */
+public class SparseKMeansCombiner extends Reducer<IntWritable, SparsePoint, IntWritable, SparsePoint> {
+
+    /**
+     * Dense buffer of the sums, reused across the calls of reduce.
+     */
+    private double[] sums;
+
+    /**
+     * Partial sum reused to emit the sums.
+     */
+    private final SparsePoint partialSum = new SparsePoint();
+
+    /**
+     * Allocates the buffer of the sums with the dimension of the centroids.
+     *
+     * @param context The context object for accessing the configuration.
+     * @throws IOException          If an I/O error occurs.
+     * @throws InterruptedException If the execution is interrupted.
+     */
+    @Override
+    protected void setup(Context context) throws IOException, InterruptedException {
+        super.setup(context);
+        sums = new double[CentroidCache.get(context.getJobID().toString(), context.getConfiguration()).getDimension()];
+    }
+
+    /**
+     * Sums the sparse points associated with a centroid.
+     *
+     * @param centroidId The ID of the centroid.
+     * @param points     The sparse points, or partial sums, associated with the centroid.
+     * @param context    The context object for writing the partial sum.
+     * @throws IOException          If an I/O error occurs.
+     * @throws InterruptedException If the execution is interrupted.
+     */
+    @Override
+    protected void reduce(IntWritable centroidId, Iterable<SparsePoint> points, Context context) throws IOException, InterruptedException {
+        Arrays.fill(sums, 0.0);
+        int instances = 0;
+        for (SparsePoint point : points) {
+            point.addTo(sums);
+            instances += point.getInstances();
+        }
+        partialSum.set(sums, instances);
+        context.write(centroidId, partialSum);
+    }
+}
@@ -0,0 +1,183 @@
+package it.unipi.hadoop;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapreduce.Mapper;
+
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Mapper class for the K-Means algorithm over sparse points.
+ * Maps each sparse point to its nearest centroid, without ever expanding it to its full dimension.
+ * When in-mapper combining is enabled, the points are summed into a partial sum per centroid (see SparsePartialSum),
+ * created when the centroid gets its first point and sparse until it fills up, and the non-zeros of the partial sums
+ * are emitted at the end of the task. The input can be either the sparse text or the binary sparse points written
+ * by the KMeansConversionMapper.
+ */
+public class SparseKMeansMapper extends Mapper<Object, Writable, IntWritable, SparsePoint> {
+
+    /**
+     * Centroids of the current iteration, shared with the other tasks of the JVM through the CentroidCache.
+     */
+    private CentroidSet centroids;
+
+    /**
+     * Index used to find the nearest centroid of each point.
+     */
+    private SparseCentroidIndex index;
+
+    /**
+     * Point reused for every input record, its pairs are parsed in place.
+     */
+    private final SparsePoint parsedPoint = new SparsePoint();
+
+    /**
+     * Output key reused for every input record.
+     */
+    private final IntWritable centroid_id = new IntWritable();
+
+    /**
+     * Flag indicating whether the points are combined inside the mapper.
+     */
+    private boolean inMapperCombining;
+
+    /**
+     * Running partial sums, one for each centroid, null until the centroid gets a point.
+     */
+    private SparsePartialSum[] partialSums;
+
+    /**
+     * Fraction of the records used by a mini-batch iteration that samples the records.
+     */
+    private double sampledFraction;
+
+    /**
+     * Random number generator of the record sampling, null when all the records are used.
+     */
+    private Random random;
+
+    /**
+     * Number of points assigned by the task.
+     */
+    private long points = 0;
+
+    /**
+     * Sum of the squared distances between the points of the task and their nearest centroid.
+     */
+    private double sse = 0.0;
+
+    /**
+     * Maps each sparse point to its nearest centroid.
+     *
+     * @param key     The input key.
+     * @param value   The input value representing a sparse point, as Text or as SparsePoint.
+     * @param context The context object for writing the centroid-point association.
+     * @throws InterruptedException Thrown when a thread is interrupted while waiting, sleeping, or otherwise occupied.
+     * @throws IOException          Thrown when an I/O error occurs.
+     */
+    @Override
+    protected void map(final Object key, final Writable value, final Context context) throws InterruptedException, IOException {
+        // Skip the records outside the mini-batch before parsing them
+        if (random != null && random.nextDouble() >= sampledFraction) {
+            return;
+        }
+
+        final SparsePoint point;
+        if (value instanceof SparsePoint) {
+            point = (SparsePoint) value;
+            // The binary points are converted before the dimension is known, the indices are sorted
+            if (point.getSize() > 0 && point.getIndices()[point.getSize() - 1] >= centroids.getDimension()) {
+                throw new IOException("Index " + point.getIndices()[point.getSize() - 1] + " out of the dimension " + centroids.getDimension());
+            }
+        } else {
+            // Skip the blank lines, e.g. at the end of the file
+            if (KMeansUtil.isBlankRecord((Text) value)) {
+                return;
+            }
+            point = parsedPoint;
+            point.set((Text) value, centroids.getDimension());
+        }
+
+        // Find the nearest centroid
+        int nearest = index.nearest(point);
+        points++;
+        sse += index.getSquaredDistance();
+
+        if (inMapperCombining) {
+            // Add the point to the running partial sum of the nearest centroid
+            if (partialSums[nearest] == null) {
+                partialSums[nearest] = new SparsePartialSum(centroids.getDimension());
+            }
+            partialSums[nearest].add(point);
+        } else {
+            // Emit the ID of the nearest centroid and the point
+            centroid_id.set(centroids.getId(nearest));
+            context.write(centroid_id, point);
+        }
+    }
+
+    /**
+     * Reads the centroids from the Hadoop configuration, or from the distributed cache, during the setup phase.
+     *
+     * @param context The context object for accessing the configuration.
+     * @throws IOException          Thrown when an I/O error occurs.
+     * @throws InterruptedException Thrown when a thread is interrupted while waiting, sleeping, or otherwise occupied.
+     */
+    @Override
+    protected void setup(Context context) throws IOException, InterruptedException {
+        super.setup(context);
+        Configuration conf = context.getConfiguration();
+        centroids = CentroidCache.get(context.getJobID().toString(), conf);
+        index = new SparseCentroidIndex(centroids);
+
+        inMapperCombining = conf.getBoolean(KMeansUtil.IN_MAPPER_COMBINING_KEY, KMeansUtil.DEFAULT_IN_MAPPER_COMBINING);
+        if (inMapperCombining) {
+            partialSums = new SparsePartialSum[centroids.size()];
+        }
+
+        // Sample the records if the mini-batch is not made of sampled splits, or not only of them
+        sampledFraction = KMeansUtil.getRecordSamplingFraction(conf);
+        if (sampledFraction < 1.0) {
+            long seed = conf.getLong(KMeansUtil.MINIBATCH_SEED_KEY, 0L);
+            int iteration = conf.getInt(KMeansUtil.ITERATION_KEY, 0);
+            int task = context.getTaskAttemptID().getTaskID().getId();
+            random = new Random(seed * 1000003L + iteration * 7919L + task);
+        }
+    }
+
+    /**
+     * Emits the partial sums of the in-mapper combining at the end of the task, updates the counters of the task
+     * and writes its SSE file (see SseSummary).
+     * Centroids without any assigned point are not emitted.
+     *
+     * @param context The context object for writing the centroid-partial sum association.
+     * @throws IOException          Thrown when an I/O error occurs.
+     * @throws InterruptedException Thrown when a thread is interrupted while waiting, sleeping, or otherwise occupied.
+     */
+    @Override
+    protected void cleanup(Context context) throws IOException, InterruptedException {
+        // Publish the metrics of the task
+        long distanceComputations = index.getDistanceComputations();
+        context.getCounter(KMeansCounter.POINTS).increment(points);
+        if (points > 0) {
+            new SseSummary(sse, new double[0]).write(context);
+        }
+        context.getCounter(KMeansCounter.DISTANCE_COMPUTATIONS).increment(distanceComputations);
+        context.getCounter(KMeansCounter.DISTANCE_PRUNED).increment(points * centroids.size() - distanceComputations);
+
+        if (inMapperCombining) {
+            SparsePoint partialSum = new SparsePoint();
+            for (int i = 0; i < partialSums.length; i++) {
+                if (partialSums[i] != null) {
+                    partialSums[i].writeTo(partialSum);
+                    centroid_id.set(centroids.getId(i));
+                    context.write(centroid_id, partialSum);
+                }
+            }
+        }
+        super.cleanup(context);
+    }
+}
@@ -0,0 +1,28 @@
+package it.unipi.hadoop;
+
+/**
+ * Reducer class for the KMeans algorithm over sparse points.
+ * The non-zeros of the sparse partial sums are added into a dense sum, since the centroids are dense,
+ * then the new centroid is computed and written as described in AbstractKMeansReducer.
+ */
+public class SparseKMeansReducer extends AbstractKMeansReducer<SparsePoint> {
+
+    /**
+     * Adds up the sparse partial sums of a centroid.
+     *
+     * @param partialSums The partial sums of the points assigned to the centroid.
+     * @param sum         The point where the sum of the coordinates is stored.
+     * @return The number of points of the sum.
+     */
+    @Override
+    protected long sum(Iterable<SparsePoint> partialSums, Point sum) {
+        sum.clear(centroids.getDimension());
+        double[] sums = sum.getCoordinates();
+        long instances = 0;
+        for (SparsePoint partialSum : partialSums) {
+            partialSum.addTo(sums);
+            instances += partialSum.getInstances();
+        }
+        return instances;
+    }
+}
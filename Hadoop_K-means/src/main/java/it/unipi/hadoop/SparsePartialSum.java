@@ -0,0 +1,174 @@
+package it.unipi.hadoop;
+
+import java.util.Arrays;
+
+/**
+ * Running partial sum of the sparse points of a centroid, used by the in-mapper combining over sparse points.
+ * The non-zeros of the sum are kept in a hash table from index to value, so that a centroid whose points touch
+ * a few coordinates costs memory for those coordinates only instead of for the whole dimension.
+ * When the sum fills a quarter of the dimension, where the table is about as large as a dense array,
+ * it is moved once to a dense array. Every coordinate is summed in the order of the points in both forms,
+ * so the result is the same as the one of a dense sum.
+ */
+public class SparsePartialSum {
+
+    /**
+     * Marker of the free slots of the table, the indices are never negative.
+     */
+    private static final int FREE = -1;
+
+    /**
+     * Initial number of slots of the table.
+     */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * Dimension of the points.
+     */
+    private final int dimension;
+
+    /**
+     * Indices of the slots of the table, FREE for the free slots, null once the sum is dense.
+     */
+    private int[] keys;
+
+    /**
+     * Values of the slots of the table, null once the sum is dense.
+     */
+    private double[] values;
+
+    /**
+     * Number of used slots of the table.
+     */
+    private int size = 0;
+
+    /**
+     * Dense coordinates of the sum, null while the sum is in the table.
+     */
+    private double[] dense;
+
+    /**
+     * Number of points of the sum.
+     */
+    private int instances = 0;
+
+    /**
+     * Constructor for creating an empty SparsePartialSum.
+     *
+     * @param dimension The dimension of the points.
+     */
+    public SparsePartialSum(int dimension) {
+        this.dimension = dimension;
+        this.keys = new int[INITIAL_CAPACITY];
+        this.values = new double[INITIAL_CAPACITY];
+        Arrays.fill(keys, FREE);
+    }
+
+    /**
+     * Adds a sparse point, or a partial sum of points, to the sum.
+     *
+     * @param point The point to be added.
+     */
+    public void add(SparsePoint point) {
+        instances += point.getInstances();
+        if (dense != null) {
+            point.addTo(dense);
+            return;
+        }
+        int[] pointIndices = point.getIndices();
+        double[] pointValues = point.getValues();
+        for (int i = 0; i < point.getSize(); i++) {
+            int slot = find(pointIndices[i]);
+            if (keys[slot] == FREE) {
+                keys[slot] = pointIndices[i];
+                size++;
+            }
+            values[slot] += pointValues[i];
+
+            if (size > dimension / 4) {
+                // The table is as large as a dense array, move the sum and add the rest of the point to it
+                toDense();
+                for (int j = i + 1; j < point.getSize(); j++) {
+                    dense[pointIndices[j]] += pointValues[j];
+                }
+                return;
+            }
+            if (2 * size > keys.length) {
+                grow();
+            }
+        }
+    }
+
+    /**
+     * Sets a sparse point from the non-zero coordinates of the sum, sorted by index.
+     *
+     * @param point The point to be set.
+     */
+    public void writeTo(SparsePoint point) {
+        if (dense != null) {
+            point.set(dense, instances);
+            return;
+        }
+        int[] indices = new int[size];
+        int count = 0;
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != FREE && values[slot] != 0.0) {
+                indices[count++] = keys[slot];
+            }
+        }
+        Arrays.sort(indices, 0, count);
+        double[] sums = new double[count];
+        for (int i = 0; i < count; i++) {
+            sums[i] = values[find(indices[i])];
+        }
+        point.set(indices, sums, count, instances);
+    }
+
+    /**
+     * Finds the slot of an index with linear probing: the slot holding it, or the free slot where it belongs.
+     *
+     * @param index The index.
+     * @return The slot of the index.
+     */
+    private int find(int index) {
+        int mask = keys.length - 1;
+        int hash = index * 0x9E3779B9;
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        while (keys[slot] != FREE && keys[slot] != index) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Doubles the slots of the table and inserts the pairs again.
+     */
+    private void grow() {
+        int[] oldKeys = keys;
+        double[] oldValues = values;
+        keys = new int[oldKeys.length * 2];
+        values = new double[oldKeys.length * 2];
+        Arrays.fill(keys, FREE);
+        for (int slot = 0; slot < oldKeys.length; slot++) {
+            if (oldKeys[slot] != FREE) {
+                int newSlot = find(oldKeys[slot]);
+                keys[newSlot] = oldKeys[slot];
+                values[newSlot] = oldValues[slot];
+            }
+        }
+    }
+
+    /**
+     * Moves the sum from the table to a dense array and releases the table.
+     */
+    private void toDense() {
+        dense = new double[dimension];
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != FREE) {
+                dense[keys[slot]] = values[slot];
+            }
+        }
+        keys = null;
+        values = null;
+    }
+}
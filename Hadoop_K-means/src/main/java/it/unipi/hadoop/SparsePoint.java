@@ -0,0 +1,339 @@
+package it.unipi.hadoop;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Represents a sparse point, or a sparse partial sum of points, of the KMeans algorithm.
+ * Only the non-zero coordinates are stored, as pairs of index and value sorted by index,
+ * so that the operations on a point cost its number of non-zeros instead of its dimension.
+ * The text form is a list of index:value pairs separated by blanks, with indices starting at zero,
+ * e.g. "3:0.5 17:1.25". The Writable form stores the indices as variable-length gaps between them.
+ */
+public class SparsePoint implements Writable {
+
+    /**
+     * Indices of the non-zero coordinates, sorted, in the first size positions.
+     */
+    private int[] indices = new int[0];
+
+    /**
+     * Values of the non-zero coordinates, in the same order of the indices.
+     */
+    private double[] values = new double[0];
+
+    /**
+     * Number of non-zero coordinates.
+     */
+    private int size = 0;
+
+    /**
+     * If instances > 1, the point is a partial sum and this number represents
+     * the number of points that have been added up.
+     */
+    private int instances = 1;
+
+    /* Writable implementation */
+
+    /**
+     * Writes the SparsePoint object to a DataOutput stream.
+     *
+     * @param dataOutput The output stream to write the data to.
+     * @throws IOException If an I/O error occurs.
+     */
+    @Override
+    public void write(DataOutput dataOutput) throws IOException {
+        WritableUtils.writeVInt(dataOutput, size);
+        int previous = 0;
+        for (int i = 0; i < size; i++) {
+            WritableUtils.writeVInt(dataOutput, indices[i] - previous);
+            dataOutput.writeDouble(values[i]);
+            previous = indices[i];
+        }
+        WritableUtils.writeVInt(dataOutput, instances);
+    }
+
+    /**
+     * Reads the SparsePoint object from a DataInput stream.
+     * The arrays are reused when they are big enough.
+     *
+     * @param dataInput The input stream to read the data from.
+     * @throws IOException If an I/O error occurs.
+     */
+    @Override
+    public void readFields(DataInput dataInput) throws IOException {
+        ensureCapacity(WritableUtils.readVInt(dataInput));
+        int previous = 0;
+        for (int i = 0; i < size; i++) {
+            previous += WritableUtils.readVInt(dataInput);
+            indices[i] = previous;
+            values[i] = dataInput.readDouble();
+        }
+        instances = WritableUtils.readVInt(dataInput);
+    }
+
+    /* Operations on points */
+
+    /**
+     * Sets the point from its text form, reading the UTF-8 bytes directly.
+     * The pairs can be in any order, they are sorted by index.
+     *
+     * @param text      The input text with the index:value pairs.
+     * @param dimension The dimension of the points, the indices must be below it.
+     * @throws NumberFormatException If the text does not contain valid pairs.
+     */
+    public void set(Text text, int dimension) throws NumberFormatException {
+        byte[] bytes = text.getBytes();
+        int length = text.getLength();
+        instances = 1;
+        size = 0;
+
+        int i = 0;
+        boolean sorted = true;
+        while (i < length) {
+            // Skip the blanks between the pairs
+            while (i < length && isBlank(bytes[i])) {
+                i++;
+            }
+            if (i == length) {
+                break;
+            }
+            int from = i;
+            while (i < length && !isBlank(bytes[i])) {
+                i++;
+            }
+            int colon = from;
+            while (colon < i && bytes[colon] != ':') {
+                colon++;
+            }
+            if (colon == i) {
+                throw new NumberFormatException("Missing ':' in sparse coordinate " + new String(bytes, from, i - from));
+            }
+
+            int index = parseIndex(bytes, from, colon);
+            if (index >= dimension) {
+                throw new NumberFormatException("Index " + index + " out of the dimension " + dimension);
+            }
+            double value = CoordinateParser.parseDouble(bytes, colon + 1, i);
+            if (value == 0.0) {
+                continue;
+            }
+            if (size == indices.length) {
+                indices = Arrays.copyOf(indices, Math.max(8, size * 2));
+                values = Arrays.copyOf(values, indices.length);
+            }
+            sorted &= size == 0 || indices[size - 1] < index;
+            indices[size] = index;
+            values[size] = value;
+            size++;
+        }
+        if (!sorted) {
+            sortByIndex();
+        }
+    }
+
+    /**
+     * Sets the point from the non-zero coordinates of a dense partial sum.
+     *
+     * @param sums      The dense coordinates.
+     * @param instances The number of points of the partial sum.
+     */
+    public void set(double[] sums, int instances) {
+        int count = 0;
+        for (double sum : sums) {
+            if (sum != 0.0) {
+                count++;
+            }
+        }
+        ensureCapacity(count);
+        int next = 0;
+        for (int j = 0; j < sums.length; j++) {
+            if (sums[j] != 0.0) {
+                indices[next] = j;
+                values[next] = sums[j];
+                next++;
+            }
+        }
+        this.instances = instances;
+    }
+
+    /**
+     * Sets the point from non-zero coordinates already sorted by index.
+     *
+     * @param indices   The indices of the non-zero coordinates, sorted.
+     * @param values    The values of the non-zero coordinates.
+     * @param size      The number of non-zero coordinates.
+     * @param instances The number of points of the partial sum.
+     */
+    public void set(int[] indices, double[] values, int size, int instances) {
+        ensureCapacity(size);
+        System.arraycopy(indices, 0, this.indices, 0, size);
+        System.arraycopy(values, 0, this.values, 0, size);
+        this.instances = instances;
+    }
+
+    /**
+     * Adds the coordinates of the point to a dense partial sum.
+     *
+     * @param sums The dense coordinates of the partial sum.
+     */
+    public void addTo(double[] sums) {
+        for (int i = 0; i < size; i++) {
+            sums[indices[i]] += values[i];
+        }
+    }
+
+    /**
+     * Calculates the squared Euclidean norm of the point.
+     *
+     * @return The squared norm.
+     */
+    public double getSquaredNorm() {
+        double norm = 0.0;
+        for (int i = 0; i < size; i++) {
+            norm += values[i] * values[i];
+        }
+        return norm;
+    }
+
+    /**
+     * Parses a non-negative decimal index.
+     *
+     * @param bytes The bytes containing the index.
+     * @param from  The offset of the first byte of the index.
+     * @param to    The offset after the last byte of the index.
+     * @return The parsed index.
+     * @throws NumberFormatException If the bytes do not represent a non-negative integer.
+     */
+    private static int parseIndex(byte[] bytes, int from, int to) throws NumberFormatException {
+        if (from == to) {
+            throw new NumberFormatException("Empty sparse index");
+        }
+        long index = 0;
+        for (int i = from; i < to; i++) {
+            if (bytes[i] < '0' || bytes[i] > '9') {
+                throw new NumberFormatException("Invalid sparse index " + new String(bytes, from, to - from));
+            }
+            index = index * 10 + (bytes[i] - '0');
+            if (index > Integer.MAX_VALUE) {
+                throw new NumberFormatException("Sparse index too large " + new String(bytes, from, to - from));
+            }
+        }
+        return (int) index;
+    }
+
+    /**
+     * Checks if a byte is a blank separating the pairs.
+     *
+     * @param b The byte.
+     * @return True if the byte is a space, a tab or a line terminator.
+     */
+    private static boolean isBlank(byte b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+    }
+
+    /**
+     * Sorts the pairs by index with an insertion sort, since the records are usually almost sorted,
+     * and sums the values of repeated indices.
+     */
+    private void sortByIndex() {
+        for (int i = 1; i < size; i++) {
+            int index = indices[i];
+            double value = values[i];
+            int j = i - 1;
+            while (j >= 0 && indices[j] > index) {
+                indices[j + 1] = indices[j];
+                values[j + 1] = values[j];
+                j--;
+            }
+            indices[j + 1] = index;
+            values[j + 1] = value;
+        }
+        int next = 0;
+        for (int i = 0; i < size; i++) {
+            if (next > 0 && indices[next - 1] == indices[i]) {
+                values[next - 1] += values[i];
+            } else {
+                indices[next] = indices[i];
+                values[next] = values[i];
+                next++;
+            }
+        }
+        size = next;
+    }
+
+    /**
+     * Prepares the arrays to hold the given number of non-zero coordinates.
+     *
+     * @param size The number of non-zero coordinates.
+     */
+    private void ensureCapacity(int size) {
+        if (indices.length < size) {
+            indices = new int[size];
+            values = new double[size];
+        }
+        this.size = size;
+    }
+
+    /* Getters */
+
+    /**
+     * Retrieves the indices of the non-zero coordinates.
+     * The returned array is the internal storage of the point, only the first getSize() positions are valid.
+     *
+     * @return The indices of the non-zero coordinates.
+     */
+    public int[] getIndices() {
+        return indices;
+    }
+
+    /**
+     * Retrieves the values of the non-zero coordinates.
+     * The returned array is the internal storage of the point, only the first getSize() positions are valid.
+     *
+     * @return The values of the non-zero coordinates.
+     */
+    public double[] getValues() {
+        return values;
+    }
+
+    /**
+     * Retrieves the number of non-zero coordinates.
+     *
+     * @return The number of non-zero coordinates.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Retrieves the number of instances of the partial sum.
+     *
+     * @return The number of instances of the partial sum.
+     */
+    public int getInstances() {
+        return instances;
+    }
+
+    /**
+     * Returns the text form of the point.
+     *
+     * @return The index:value pairs separated by spaces.
+     */
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                sb.append(' ');
+            }
+            sb.append(indices[i]).append(':').append(values[i]);
+        }
+        return sb.toString();
+    }
+}
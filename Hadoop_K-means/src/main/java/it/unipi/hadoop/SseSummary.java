@@ -0,0 +1,128 @@
+package it.unipi.hadoop;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.TaskInputOutputContext;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputCommitter;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Binary side output of the map tasks, with the SSE of the points of the task.
+ * Counters only hold integers, and a fixed-point SSE overflows (or loses the small values) on large datasets,
+ * so every map task writes its SSE as doubles in a small file next to the output of the job, committed with the task:
+ * the total SSE, and optionally the SSE of a group of values, e.g. of every model of a sweep or of every cluster.
+ * The driver sums the files of the job.
+ */
+public class SseSummary {
+
+    /**
+     * Prefix of the names of the files, followed by the number of the map task.
+     * It starts with an underscore, so the input formats skip the files when the directory is read as input.
+     */
+    public static final String FILE_PREFIX = "_sse-m-";
+
+    /**
+     * Total SSE.
+     */
+    private final double sse;
+
+    /**
+     * SSE of every value of the group.
+     */
+    private final double[] groupSse;
+
+    /**
+     * Constructor for creating a SseSummary object.
+     *
+     * @param sse      The total SSE.
+     * @param groupSse The SSE of every value of the group, empty if there is no group.
+     */
+    public SseSummary(double sse, double[] groupSse) {
+        this.sse = sse;
+        this.groupSse = groupSse;
+    }
+
+    /**
+     * Writes the SSE of a map task in its work output path, so that it is committed with the task.
+     *
+     * @param context The context of the mapper.
+     * @throws IOException          If an I/O error occurs, or if the output of the job is not written to files.
+     * @throws InterruptedException If the execution is interrupted.
+     */
+    public void write(TaskInputOutputContext<?, ?, ?, ?> context) throws IOException, InterruptedException {
+        if (!(context.getOutputCommitter() instanceof FileOutputCommitter)) {
+            throw new IOException("The SSE of the tasks needs a FileOutputCommitter, found "
+                    + context.getOutputCommitter().getClass().getName());
+        }
+        Path path = new Path(FileOutputFormat.getWorkOutputPath(context),
+                FILE_PREFIX + String.format("%05d", context.getTaskAttemptID().getTaskID().getId()));
+        FileSystem fs = path.getFileSystem(context.getConfiguration());
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fs.create(path, false)))) {
+            out.writeDouble(sse);
+            out.writeInt(groupSse.length);
+            for (double value : groupSse) {
+                out.writeDouble(value);
+            }
+        }
+    }
+
+    /**
+     * Reads the SSE files of a job and sums them. The tasks without points may have written no file.
+     *
+     * @param conf    The Hadoop configuration.
+     * @param dirPath The output path of the job.
+     * @param groups  The number of values of the group, 0 if there is no group.
+     * @return The SSE of the job.
+     * @throws IOException If an I/O error occurs during the reading, or if a file has a different group.
+     */
+    public static SseSummary read(Configuration conf, Path dirPath, int groups) throws IOException {
+        double sse = 0.0;
+        double[] groupSse = new double[groups];
+
+        FileSystem fs = dirPath.getFileSystem(conf);
+        for (FileStatus status : fs.listStatus(dirPath)) {
+            if (!status.getPath().getName().startsWith(FILE_PREFIX)) {
+                continue;
+            }
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(fs.open(status.getPath())))) {
+                sse += in.readDouble();
+                int length = in.readInt();
+                if (length != groups) {
+                    throw new IOException("The SSE file " + status.getPath() + " has " + length + " groups, expected " + groups);
+                }
+                for (int i = 0; i < groups; i++) {
+                    groupSse[i] += in.readDouble();
+                }
+            }
+        }
+        return new SseSummary(sse, groupSse);
+    }
+
+    /* Getters */
+
+    /**
+     * Retrieves the total SSE.
+     *
+     * @return The SSE.
+     */
+    public double getSse() {
+        return sse;
+    }
+
+    /**
+     * Retrieves the SSE of every value of the group.
+     *
+     * @return The SSE of the values of the group.
+     */
+    public double[] getGroupSse() {
+        return groupSse;
+    }
+}
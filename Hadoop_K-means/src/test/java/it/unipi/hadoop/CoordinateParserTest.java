@@ -0,0 +1,81 @@
+package it.unipi.hadoop;
+
+import junit.framework.TestCase;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Checks that CoordinateParser returns bit for bit the same values as Double.parseDouble.
+ */
+public class CoordinateParserTest extends TestCase {
+
+    /**
+     * Parses a number with both parsers and compares the bits of the results.
+     *
+     * @param text The number.
+     */
+    private static void assertSameValue(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        long expected = Double.doubleToRawLongBits(Double.parseDouble(text.trim()));
+        long actual = Double.doubleToRawLongBits(CoordinateParser.parseDouble(bytes, 0, bytes.length));
+        assertEquals("Parsing " + text, expected, actual);
+    }
+
+    public void testShortestRepresentations() {
+        Random random = new Random(1);
+        for (int i = 0; i < 200000; i++) {
+            assertSameValue(Double.toString(random.nextDouble()));
+            assertSameValue(Double.toString(random.nextGaussian() * Math.pow(10, random.nextInt(40) - 20)));
+        }
+    }
+
+    public void testLongMantissas() {
+        Random random = new Random(2);
+        for (int i = 0; i < 200000; i++) {
+            // 16 to 25 significant digits, more than the fast path accepts
+            int digits = 16 + random.nextInt(10);
+            StringBuilder text = new StringBuilder(random.nextBoolean() ? "0." : "");
+            for (int j = 0; j < digits; j++) {
+                text.append((char) ('0' + random.nextInt(10)));
+            }
+            if (random.nextBoolean()) {
+                text.append('e').append(random.nextInt(60) - 30);
+            }
+            assertSameValue(text.toString());
+        }
+    }
+
+    public void testFormattedValues() {
+        Random random = new Random(3);
+        for (int i = 0; i < 100000; i++) {
+            double value = random.nextDouble() * 1000;
+            assertSameValue(String.format(Locale.ROOT, "%.17g", value));
+            assertSameValue(String.format(Locale.ROOT, "%.6f", value));
+            assertSameValue(String.format(Locale.ROOT, "%.3e", -value));
+        }
+    }
+
+    public void testSpecialForms() {
+        String[] values = {
+                "0", "-0", "+0.0", "0.000", "1", "-1", "9007199254740993", "9007199254740992.5",
+                "0.24474111130289541", "123456789012345678901234567890", "1e22", "1e23", "1e-22", "1e-23",
+                "1e308", "1e309", "4.9e-324", "2e-324", "1.7976931348623157e308", " 0.5\r", "\t3.25 ",
+                "NaN", "-Infinity", "0x1.8p1", ".5", "5.", "1E+5", "1e-5"
+        };
+        for (String value : values) {
+            assertSameValue(value);
+        }
+    }
+
+    public void testRecords() {
+        byte[] record = "0.1,-2.5e3, 7\r".getBytes(StandardCharsets.UTF_8);
+        double[] coordinates = new double[CoordinateParser.countFields(record, 0, record.length, ',')];
+        CoordinateParser.parse(record, 0, record.length, ',', coordinates);
+        assertEquals(3, coordinates.length);
+        assertEquals(0.1, coordinates[0], 0.0);
+        assertEquals(-2500.0, coordinates[1], 0.0);
+        assertEquals(7.0, coordinates[2], 0.0);
+    }
+}
@@ -0,0 +1,105 @@
+package it.unipi.hadoop;
+
+import junit.framework.TestCase;
+import org.apache.hadoop.conf.Configuration;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Checks that KdTreeCentroidIndex finds the same centroid and the same distance as LinearCentroidIndex.
+ */
+public class KdTreeCentroidIndexTest extends TestCase {
+
+    /**
+     * Builds a set of random centroids, with integer coordinates when ties are wanted.
+     *
+     * @param random    The random generator.
+     * @param k         The number of centroids.
+     * @param dimension The dimension of the centroids.
+     * @param grid      Whether the coordinates are small integers, so that many centroids coincide.
+     * @return The centroids.
+     */
+    private static CentroidSet randomCentroids(Random random, int k, int dimension, boolean grid) {
+        ArrayList<Centroid> centroids = new ArrayList<>(k);
+        for (int i = 0; i < k; i++) {
+            centroids.add(new Centroid(i, randomPoint(random, dimension, grid)));
+        }
+        return new CentroidSet(centroids);
+    }
+
+    /**
+     * Builds a random point, on the grid and half-grid when ties are wanted, so that many points are equidistant
+     * from two or more centroids.
+     *
+     * @param random    The random generator.
+     * @param dimension The dimension of the point.
+     * @param grid      Whether the coordinates are multiples of one half.
+     * @return The coordinates of the point.
+     */
+    private static double[] randomPoint(Random random, int dimension, boolean grid) {
+        double[] point = new double[dimension];
+        for (int j = 0; j < dimension; j++) {
+            point[j] = grid ? random.nextInt(10) / 2.0 : random.nextGaussian() * 100;
+        }
+        return point;
+    }
+
+    /**
+     * Compares the two indexes on random points.
+     *
+     * @param random    The random generator.
+     * @param centroids The centroids.
+     * @param grid      Whether the points are on the half-grid.
+     */
+    private static void assertSameAsLinear(Random random, CentroidSet centroids, boolean grid) {
+        CentroidIndex linear = new LinearCentroidIndex(centroids);
+        CentroidIndex kdTree = new KdTreeCentroidIndex(centroids);
+        for (int q = 0; q < 2000; q++) {
+            double[] point = randomPoint(random, centroids.getDimension(), grid);
+            assertEquals(linear.nearest(point), kdTree.nearest(point));
+            assertEquals(Double.doubleToLongBits(linear.getSquaredDistance()), Double.doubleToLongBits(kdTree.getSquaredDistance()));
+        }
+    }
+
+    public void testRandomCentroids() {
+        Random random = new Random(1);
+        for (int dimension = 1; dimension <= 4; dimension++) {
+            for (int k : new int[]{1, 2, 8, 9, 255, 256, 257, 3000}) {
+                assertSameAsLinear(random, randomCentroids(random, k, dimension, false), false);
+            }
+        }
+    }
+
+    public void testTies() {
+        Random random = new Random(2);
+        for (int dimension = 1; dimension <= 4; dimension++) {
+            for (int k : new int[]{2, 8, 9, 255, 256, 257, 1000}) {
+                assertSameAsLinear(random, randomCentroids(random, k, dimension, true), true);
+            }
+        }
+    }
+
+    public void testDuplicateCentroids() {
+        ArrayList<Centroid> centroids = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            centroids.add(new Centroid(i, new double[]{i % 4, 1.0}));
+        }
+        CentroidIndex kdTree = new KdTreeCentroidIndex(new CentroidSet(centroids));
+        assertEquals(2, kdTree.nearest(new double[]{2.0, 1.0}));
+        assertEquals(0.0, kdTree.getSquaredDistance(), 0.0);
+        // Equidistant from the centroids at 1 and 2, the lowest index wins
+        assertEquals(1, kdTree.nearest(new double[]{1.5, 1.0}));
+        assertEquals(0.25, kdTree.getSquaredDistance(), 0.0);
+        assertSameAsLinear(new Random(3), new CentroidSet(centroids), true);
+    }
+
+    public void testAutomaticSelection() {
+        Configuration conf = new Configuration(false);
+        Random random = new Random(4);
+        assertFalse(KMeansUtil.createCentroidIndex(randomCentroids(random, 255, 4, false), conf) instanceof KdTreeCentroidIndex);
+        assertTrue(KMeansUtil.createCentroidIndex(randomCentroids(random, 256, 4, false), conf) instanceof KdTreeCentroidIndex);
+        assertTrue(KMeansUtil.createCentroidIndex(randomCentroids(random, 256, 1, false), conf) instanceof KdTreeCentroidIndex);
+        assertFalse(KMeansUtil.createCentroidIndex(randomCentroids(random, 256, 5, false), conf) instanceof KdTreeCentroidIndex);
+    }
+}
@@ -0,0 +1,66 @@
+package it.unipi.hadoop;
+
+import junit.framework.TestCase;
+import org.apache.hadoop.io.Text;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Checks that SparsePartialSum gives the same partial sums as a dense sum, before and after it becomes dense.
+ */
+public class SparsePartialSumTest extends TestCase {
+
+    /**
+     * Sums random sparse points with both methods and compares the emitted partial sums.
+     *
+     * @param random    The random generator.
+     * @param dimension The dimension of the points.
+     * @param nonZeros  The maximum number of non-zeros of every point.
+     * @param points    The number of points.
+     */
+    private static void assertSameAsDense(Random random, int dimension, int nonZeros, int points) {
+        SparsePartialSum sum = new SparsePartialSum(dimension);
+        double[] dense = new double[dimension];
+        int instances = 0;
+        SparsePoint point = new SparsePoint();
+        for (int p = 0; p < points; p++) {
+            StringBuilder text = new StringBuilder();
+            int size = 1 + random.nextInt(nonZeros);
+            for (int i = 0; i < size; i++) {
+                // Small integers, so that some sums cancel out to zero
+                text.append(random.nextInt(dimension)).append(':').append(random.nextInt(5) - 2 + random.nextDouble() * (p % 2)).append(' ');
+            }
+            point.set(new Text(text.toString()), dimension);
+            sum.add(point);
+            point.addTo(dense);
+            instances += point.getInstances();
+        }
+
+        SparsePoint expected = new SparsePoint();
+        expected.set(dense, instances);
+        SparsePoint actual = new SparsePoint();
+        sum.writeTo(actual);
+        assertEquals(expected.getInstances(), actual.getInstances());
+        assertEquals(expected.getSize(), actual.getSize());
+        assertTrue(Arrays.equals(Arrays.copyOf(expected.getIndices(), expected.getSize()), Arrays.copyOf(actual.getIndices(), actual.getSize())));
+        for (int i = 0; i < expected.getSize(); i++) {
+            assertEquals(Double.doubleToLongBits(expected.getValues()[i]), Double.doubleToLongBits(actual.getValues()[i]));
+        }
+    }
+
+    public void testSparseSums() {
+        Random random = new Random(1);
+        for (int trial = 0; trial < 200; trial++) {
+            assertSameAsDense(random, 100000, 5, 1 + random.nextInt(200));
+        }
+    }
+
+    public void testSumsThatBecomeDense() {
+        Random random = new Random(2);
+        for (int trial = 0; trial < 200; trial++) {
+            int dimension = 1 + random.nextInt(300);
+            assertSameAsDense(random, dimension, 1 + random.nextInt(dimension), 1 + random.nextInt(100));
+        }
+    }
+}